@@ -19,7 +19,6 @@ import org.graphstream.ui.view.Viewer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.api.DataSet;
 import org.nd4j.linalg.dataset.api.iterator.DataSetIterator;
-import org.nd4j.linalg.factory.Nd4j;
 
 import dataneat.base.BaseNeat;
 import dataneat.evolution.Population;
@@ -27,7 +26,11 @@ import dataneat.evolution.SupervisedEvolver;
 import dataneat.genome.NeatChromosome;
 import dataneat.monitor.RunData;
 import dataneat.operators.TestFitnessOperator;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.ActivationCache;
+import dataneat.phenotype.PlanCache;
+import dataneat.phenotype.PopulationEvaluator;
+import dataneat.utils.BufferPool;
+import dataneat.utils.EvaluationExecutor;
 import dataneat.utils.IO;
 import dataneat.utils.PropertiesHolder;
 import dataneat.utils.RandGen;
@@ -39,16 +42,23 @@ public class Engine extends BaseNeat {
 	private static final String CONSOLE_DELAY = "consoleDelay";
 	private static final String STABIL_THRESH = "stabilizationDelta";	
 	private static final String COMPLEXITY_THRESH = "complexityThresh";
+	private static final String BATCH_SIZE = "batchSize";
+	private static final String PLAN_CACHE_SIZE = "planCacheSize";
+	private static final String ACTIVATION_CACHE_SIZE = "activationCacheSize";
+	private static final String EVAL_THREADS = "evalThreads";
+	private static final String ASYNC_TEST = "asyncTest";
 
 	private double stabilDelta = 0.01;
 	private double mpc = 0.0, prevMpc = 0.0, mpcBaseline = 0.0, complexityThresh = 0.0;
 	private Integer batchSize = 50;
 	private INDArray stabilMatrix;
 	private RunData runData;
-	private boolean prune = false;
+	private boolean prune = false, asyncTest = false;
 	private int testDelay = 0, roundsSinceTestUpdate = 0, iteration = 0, numInputs = 0, numOutputs = 0,
 			consoleDelay = 10, sinceConsoleUpdate = 0, mpcCounter = 0, mpcThresh = 3;
 	private TestFitnessOperator testFitnessOperator;
+	// test scores still being computed in the background, if any
+	private transient PendingTest pendingTest;
 	private SupervisedEvolver evolver;
 	private Population pop;
 	
@@ -66,9 +76,14 @@ public class Engine extends BaseNeat {
 		consoleDelay = Integer.parseInt(getParams().getProperty(CONSOLE_DELAY));
 		stabilDelta = Double.parseDouble(getParams().getProperty(STABIL_THRESH));
 		complexityThresh = Double.parseDouble(getParams().getProperty(COMPLEXITY_THRESH));
+		asyncTest = Integer.parseInt(getParams().getProperty(ASYNC_TEST)) == 1;
+		PlanCache.getPlanCache().setCapacity(Long.parseLong(getParams().getProperty(PLAN_CACHE_SIZE)));
+		ActivationCache.getActivationCache()
+				.setCapacity(Long.parseLong(getParams().getProperty(ACTIVATION_CACHE_SIZE)));
+		EvaluationExecutor.getEvaluationExecutor()
+				.setParallelism(Integer.parseInt(getParams().getProperty(EVAL_THREADS)));
 		this.batchSize = batchSize;		
-		stabilMatrix = Nd4j.zeros(batchSize, 1);
-		stabilMatrix.addi(stabilDelta);
+		stabilMatrix = BufferPool.column(batchSize, stabilDelta);
 		testFitnessOperator = new TestFitnessOperator(getHolder());
 		this.numInputs = numInputs;
 		this.numOutputs = numOutputs;
@@ -86,9 +101,9 @@ public class Engine extends BaseNeat {
 		// does a single round of evolution, must call autoconfig before using
 		// this method otherwise the evolver and pop will not be configured
 		if (train.numExamples() != batchSize) {
-			getParams().setProperty(BATCH_SIZE, Integer.toString(train.numExamples()));
-			stabilMatrix = Nd4j.zeros(batchSize, 1);
-			stabilMatrix.addi(stabilDelta);
+			batchSize = train.numExamples();
+			getParams().setProperty(BATCH_SIZE, Integer.toString(batchSize));
+			stabilMatrix = BufferPool.column(batchSize, stabilDelta);
 			evolver.setStabilMatrix(stabilMatrix);
 		}
 		run(evolver, pop, train);
@@ -127,15 +142,17 @@ public class Engine extends BaseNeat {
 			System.out.println("MPC: " + mpc);
 			mpcCheck();
 		}
+
+		mergeTest(true);
 	}
 
 	private void run(DataSet train, DataSet test) {
 		// does a single round of evolution, must call autoconfig before using
 		// this method otherwise the evolver and pop will not be configured
 		if (train.numExamples() != batchSize) {
-			getParams().setProperty(BATCH_SIZE, Integer.toString(train.numExamples()));
-			stabilMatrix = Nd4j.zeros(batchSize, 1);
-			stabilMatrix.addi(stabilDelta);
+			batchSize = train.numExamples();
+			getParams().setProperty(BATCH_SIZE, Integer.toString(batchSize));
+			stabilMatrix = BufferPool.column(batchSize, stabilDelta);
 			evolver.setStabilMatrix(stabilMatrix);
 		}
 		run(evolver, pop, train, test);
@@ -144,10 +161,12 @@ public class Engine extends BaseNeat {
 	public void run(SupervisedEvolver evolver, Population pop, DataSet train, DataSet test) {
 		// does a single round of evolution
 
-		// do some pre evolution
-		evolver.preEvolution(pop, train);
+		// take in the test scores of an earlier round if they are done
+		mergeTest(false);
 
-		updateTestdataInfo(pop, test);
+		// do some pre evolution, scoring the test set along with the training
+		// set when it is due
+		updateTestdataInfo(evolver, pop, train, test);
 
 		// log some data
 		runData.addRound(iteration, pop.getSpeciesDB().getSpeciesList().size(), pop.getTrainingBest().getFitness(),
@@ -225,27 +244,45 @@ public class Engine extends BaseNeat {
 		}
 	}
 
-	private void updateTestdataInfo(Population pop, DataSet test) {
+	private void updateTestdataInfo(SupervisedEvolver evolver, Population pop, DataSet train, DataSet test) {
 
-		if (roundsSinceTestUpdate >= testDelay) {
+		if (roundsSinceTestUpdate >= testDelay && asyncTest) {
+			// the test set is scored in the background while evolution goes
+			// on, one round at a time
+			roundsSinceTestUpdate = 0;
+			evolver.preEvolution(pop, train);
+			mergeTest(true);
+			pendingTest = PendingTest.submit(pop.getChromosomes(), runData,
+					snapshot -> testFitnessOperator.operate(snapshot, test));
+		} else if (roundsSinceTestUpdate >= testDelay) {
 			roundsSinceTestUpdate = 0;
-			testFitnessOperator.operate(pop.getChromosomes(), test);
+			evolver.preEvolution(pop, train, test, testFitnessOperator);
 			pop.updateTestBest();
 		} else {
+			evolver.preEvolution(pop, train);
 			roundsSinceTestUpdate++;
 		}
 	}
 
+	private void mergeTest(boolean wait) {
+		// hands pending test scores to the monitor and the run data, waiting
+		// for them if asked to
+		if (pendingTest != null && (wait || pendingTest.isDone())) {
+			pendingTest.merge(pop, runData);
+			pendingTest = null;
+		}
+	}
+
 	public Engine reset() {
 		iteration = 0;		
 		return this;
 	}
 
 	public void tuningReset() {
+		mergeTest(true);
 		reset();
 		rebuildPop(numInputs, numOutputs);
-		long seed = RandGen.getSeed();
-		RandGen.rand.setSeed(seed);
+		RandGen.reseed();
 		roundsSinceTestUpdate = 0;
 	}
 
@@ -262,6 +299,7 @@ public class Engine extends BaseNeat {
 	}
 
 	public INDArray generatePredictions(INDArray inputs, String mode) {
+		mergeTest(true);
 		NeatChromosome chrom = null;
 		switch (mode) {
 		case "train":
@@ -275,16 +313,16 @@ public class Engine extends BaseNeat {
 		}
 		
 		batchSize = inputs.rows();		
-		stabilMatrix = Nd4j.zeros(batchSize, 1);
-		stabilMatrix.addi(stabilDelta);
 
-		Network net = new Network(chrom, getHolder(), stabilMatrix, batchSize);
+		// the champion runs on the evaluator the fitness operators pick for
+		// its size and the number of samples
+		PopulationEvaluator evaluator = new PopulationEvaluator(getHolder());
 		System.out.println(chrom.getFitness());
-		net.computeNetPrevTimestep(inputs);
-		return net.getOutput();
+		return evaluator.computeNetPrevTimestep(chrom, inputs);
 	}
 
 	public void writePredictions(INDArray inputs, String mode, String file) {
+		mergeTest(true);
 		NeatChromosome chrom = null;
 		switch (mode) {
 		case "train":
@@ -298,12 +336,9 @@ public class Engine extends BaseNeat {
 		}
 		
 		batchSize = inputs.rows();		
-		stabilMatrix = Nd4j.zeros(batchSize, 1);
-		stabilMatrix.addi(stabilDelta);
 
-		Network net = new Network(chrom, getHolder(), stabilMatrix, batchSize);
-		net.computeNetPrevTimestep(inputs);
-		IO.addToFile(net.getOutput().toString(), file);
+		PopulationEvaluator evaluator = new PopulationEvaluator(getHolder());
+		IO.addToFile(evaluator.computeNetPrevTimestep(chrom, inputs).toString(), file);
 	}
 
 	public void displayNetwork(int id) {
@@ -321,10 +356,12 @@ public class Engine extends BaseNeat {
 	}
 
 	public void displayBestTestNetwork() {
+		mergeTest(true);
 		pop.getTestBest().buildGraph().display();
 	}
 
 	public RunData getRunData() {
+		mergeTest(true);
 		return runData;
 	}
 
@@ -333,6 +370,7 @@ public class Engine extends BaseNeat {
 	}
 
 	public Population getPop() {
+		mergeTest(true);
 		return pop;
 	}
 }
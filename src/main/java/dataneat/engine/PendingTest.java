@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+
+import dataneat.evolution.Population;
+import dataneat.genome.NeatChromosome;
+import dataneat.monitor.RunData;
+
+public class PendingTest {
+	// test scores of a snapshot of the population, computed on a background
+	// thread while the next generations are bred and trained. Test fitness
+	// does not take part in selection, so the only thing waiting on it is the
+	// report: merge hands the champion of the snapshot to the FitnessMonitor
+	// and gives the rounds logged in the meantime its test fitness. Merging
+	// is done by the engine's thread, so the monitor is never shared
+
+	private static final ExecutorService tester = Executors.newSingleThreadExecutor(r -> {
+		Thread t = new Thread(r, "test-evaluation");
+		t.setDaemon(true);
+		return t;
+	});
+
+	private final List<NeatChromosome> snapshot;
+	private final int firstRound;
+	private final Future<?> scoring;
+
+	private PendingTest(List<NeatChromosome> snapshot, int firstRound, Future<?> scoring) {
+		this.snapshot = snapshot;
+		this.firstRound = firstRound;
+		this.scoring = scoring;
+	}
+
+	public static PendingTest submit(List<NeatChromosome> population, RunData runData,
+			Consumer<List<NeatChromosome>> scorer) {
+		// copies, so breeding can go on with the originals. The next round
+		// runData logs is the first one the scores belong to
+		List<NeatChromosome> snapshot = new ArrayList<NeatChromosome>(population.size());
+		for (NeatChromosome chrom : population) {
+			snapshot.add(NeatChromosome.snapshot(chrom));
+		}
+
+		return new PendingTest(snapshot, runData.getRounds().size(), tester.submit(() -> scorer.accept(snapshot)));
+	}
+
+	public boolean isDone() {
+		return scoring.isDone();
+	}
+
+	public void merge(Population pop, RunData runData) {
+		// waits for the scores if they are not in yet
+		try {
+			scoring.get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+					: new RuntimeException(e.getCause());
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+
+		pop.updateTestBest(snapshot);
+		runData.updateTest(firstRound, pop.getTestBest().getTestFitness());
+	}
+}
@@ -18,6 +18,7 @@ package dataneat.evolution;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
@@ -25,6 +26,7 @@ import dataneat.monitor.FitnessMonitor;
 import dataneat.speciation.SpeciesDB;
 import dataneat.utils.PropertiesHolder;
 import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
 
 public class Population extends BaseNeat {
 
@@ -58,10 +60,11 @@ public class Population extends BaseNeat {
 	}
 
 	private void initPopulation(int numInputs, int numOutputs) {
+		// chromosome i draws its weights from child i of a generation stream
+		RandomStream random = RandGen.nextGeneration();
 
 		for (int i = 0; i < popTargetSize; i++) {
-			NeatChromosome chrom = new NeatChromosome(numInputs, numOutputs, connected, getHolder());
-			add(chrom);
+			RandGen.run(random.split(i), () -> add(new NeatChromosome(numInputs, numOutputs, connected, getHolder())));
 		}
 		
 		initMonitor();
@@ -80,38 +83,40 @@ public class Population extends BaseNeat {
 	}
 	
 	public void updateTestBest() {		
-		for (NeatChromosome chrom : chromosomes) {			
-			fitnessMonitor.updateTest(chrom);			
-		}
+		updateTestBest(chromosomes);
+	}
+
+	public void updateTestBest(List<NeatChromosome> scored) {
+		// scored may be a snapshot of an earlier generation
+		fitnessMonitor.updateTest(scored);
 		System.out.println(fitnessMonitor.getBestTestFitness().getTestFitness());
 	}
 
-	private void addRandom(int amount) {
+	private void addRandom(int amount, Random random) {
 
 		for (int i = 0; i < Math.abs(amount); i++) {
 
 			if (chromosomes.size() < 1) {
-				NeatChromosome additionalChrom = new NeatChromosome(numInputs, numOutputs, connected, getHolder());
-				add(additionalChrom);
+				RandGen.run(random, () -> add(new NeatChromosome(numInputs, numOutputs, connected, getHolder())));
 			} else {
 
-				int duplicatedChrom = RandGen.rand.nextInt(chromosomes.size());
+				int duplicatedChrom = random.nextInt(chromosomes.size());
 				NeatChromosome additionalChrom = new NeatChromosome(chromosomes.get(duplicatedChrom));
 				add(additionalChrom);
 			}
 		}
 	}
 
-	private void killRandom(int amount) {
+	private void killRandom(int amount, Random random) {
 
 		for (int i = 0; i < Math.abs(amount); i++) {
 
-			int deadChrom = RandGen.rand.nextInt(chromosomes.size());
+			int deadChrom = random.nextInt(chromosomes.size());
 			chromosomes.remove(deadChrom);
 		}
 	}
 
-	public void correctSize() {
+	public void correctSize(Random random) {
 		int difference = chromosomes.size() - popTargetSize;
 
 		if (difference == 0) {
@@ -119,9 +124,9 @@ public class Population extends BaseNeat {
 		}
 
 		if (difference < 0) {
-			addRandom(difference);
+			addRandom(difference, random);
 		} else {
-			killRandom(difference);
+			killRandom(difference, random);
 		}
 	}
 	
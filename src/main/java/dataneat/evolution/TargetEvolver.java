@@ -17,9 +17,14 @@ package dataneat.evolution;
 
 import org.nd4j.linalg.dataset.api.DataSet;
 
+import dataneat.operators.TestFitnessOperator;
+
 public interface TargetEvolver {
 
 	public void preEvolution(Population pop, DataSet data);
+
+	// the same, also scoring the population on the test set
+	public void preEvolution(Population pop, DataSet data, DataSet test, TestFitnessOperator tester);
 	
 	//executes operators on a population
 	public void evolve(Population pop);
@@ -0,0 +1,65 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.fitness;
+
+public class Accuracy extends StreamingFitnessFunction {
+	// fraction of the samples whose largest output is the one of their
+	// largest label, to be maximized
+
+	private static final long serialVersionUID = 1L;
+
+	public Accuracy() {}
+
+	@Override
+	public FitnessAccumulator newAccumulator() {
+		return new FitnessAccumulator() {
+			private int correct = 0, samples = 0;
+
+			@Override
+			public void add(double[] labels, double[] outputs, int batchSize, int from, int to) {
+				int numOutputs = outputs.length / batchSize;
+
+				for (int s = from; s < to; s++) {
+					int predicted = s, expected = s;
+					for (int i = s + batchSize; i < numOutputs * batchSize; i += batchSize) {
+						if (outputs[i] > outputs[predicted]) {
+							predicted = i;
+						}
+						if (labels[i] > labels[expected]) {
+							expected = i;
+						}
+					}
+
+					if (predicted == expected) {
+						correct++;
+					}
+				}
+
+				samples += to - from;
+			}
+
+			@Override
+			public double getFitness() {
+				return (double) correct / samples;
+			}
+
+			@Override
+			public void reset() {
+				correct = samples = 0;
+			}
+		};
+	}
+}
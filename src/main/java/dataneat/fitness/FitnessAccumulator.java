@@ -0,0 +1,28 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.fitness;
+
+public interface FitnessAccumulator {
+	// running fitness of the samples added so far, so a batch can be scored
+	// a chunk at a time without building any matrices. Labels and outputs are
+	// column major, output i of sample s at i * batchSize + s
+
+	public void add(double[] labels, double[] outputs, int batchSize, int from, int to);
+
+	public double getFitness();
+
+	public void reset();
+}
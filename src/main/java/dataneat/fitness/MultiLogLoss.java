@@ -15,25 +15,58 @@
  *******************************************************************************/
 package dataneat.fitness;
 
-import java.io.Serializable;
-
-import org.nd4j.linalg.activations.IActivation;
-import org.nd4j.linalg.activations.impl.ActivationSoftmax;
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.lossfunctions.ILossFunction;
-import org.nd4j.linalg.lossfunctions.impl.LossMCXENT;
-
-public class MultiLogLoss implements TargetFitnessFunction, Serializable {
+public class MultiLogLoss extends StreamingFitnessFunction {
+	// mean cross entropy of the softmax of the outputs against the labels,
+	// the softmax worked out per sample through its log, which also keeps it
+	// finite for outputs far apart
 
 	private static final long serialVersionUID = 1L;
 	
 	public MultiLogLoss(){}
 
 	@Override
-	public double computeFitness(INDArray labels, INDArray outputs) {				
-		//INDArray z = Nd4j.getExecutioner().execAndReturn(new SoftMax(outputs));		
-		ILossFunction func = new LossMCXENT();
-		IActivation act = new ActivationSoftmax();
-		return func.computeScore(labels, outputs,act , null, true);		
+	public FitnessAccumulator newAccumulator() {
+		return new FitnessAccumulator() {
+			private double loss = 0.0;
+			private int samples = 0;
+
+			@Override
+			public void add(double[] labels, double[] outputs, int batchSize, int from, int to) {
+				int numOutputs = outputs.length / batchSize;
+
+				for (int s = from; s < to; s++) {
+					double max = Double.NEGATIVE_INFINITY;
+					for (int i = s; i < numOutputs * batchSize; i += batchSize) {
+						max = Math.max(max, outputs[i]);
+					}
+
+					double sumExp = 0.0;
+					for (int i = s; i < numOutputs * batchSize; i += batchSize) {
+						sumExp += Math.exp(outputs[i] - max);
+					}
+
+					// log softmax of output i is outputs[i] - logSum
+					double logSum = max + Math.log(sumExp);
+					for (int i = s; i < numOutputs * batchSize; i += batchSize) {
+						if (labels[i] != 0.0) {
+							loss -= labels[i] * (outputs[i] - logSum);
+						}
+					}
+				}
+
+				samples += to - from;
+			}
+
+			@Override
+			public double getFitness() {
+				return loss / samples;
+			}
+
+			@Override
+			public void reset() {
+				loss = 0.0;
+				samples = 0;
+			}
+		};
 	}
 }
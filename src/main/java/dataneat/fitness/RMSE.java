@@ -15,19 +15,58 @@
  *******************************************************************************/
 package dataneat.fitness;
 
-import java.io.Serializable;
-
-import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.lossfunctions.LossFunctions;
-
-public class RMSE implements TargetFitnessFunction, Serializable {
+public class RMSE extends StreamingFitnessFunction {
+	// root of half the squared error summed over every output of every
+	// sample, as the deprecated LossFunctions.score of MSE worked it out
 
 	private static final long serialVersionUID = 1L;
 	
 	public RMSE(){}
 
 	@Override
-	public double computeFitness(INDArray labels, INDArray outputs) {
-		return  Math.sqrt(LossFunctions.score(labels, LossFunctions.LossFunction.MSE, outputs, 0.0, 0.0, false));			
-	}	
+	public FitnessAccumulator newAccumulator() {
+		return new FitnessAccumulator() {
+			private double squared = 0.0;
+
+			@Override
+			public void add(double[] labels, double[] outputs, int batchSize, int from, int to) {
+				int numOutputs = outputs.length / batchSize;
+
+				for (int i = 0; i < numOutputs; i++) {
+					for (int s = i * batchSize + from; s < i * batchSize + to; s++) {
+						double error = outputs[s] - labels[s];
+						squared += error * error;
+					}
+				}
+			}
+
+			@Override
+			public double getFitness() {
+				return Math.sqrt(squared / 2.0);
+			}
+
+			@Override
+			public void reset() {
+				squared = 0.0;
+			}
+		};
+	}
+
+	@Override
+	public double combine(double[] fitness, int[] sizes, int count) {
+		// the squared errors add up over the samples rather than average, so
+		// the chunks not seen yet are taken to be like the ones that were
+		double sum = 0.0;
+		int seen = 0, samples = 0;
+
+		for (int c = 0; c < sizes.length; c++) {
+			if (c < count) {
+				sum += fitness[c] * fitness[c];
+				seen += sizes[c];
+			}
+			samples += sizes[c];
+		}
+
+		return Math.sqrt(sum * samples / seen);
+	}
 }
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.fitness;
+
+import java.io.Serializable;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+public abstract class StreamingFitnessFunction implements TargetFitnessFunction, Serializable {
+	// fitness functions that score the output columns of a network in a
+	// single pass over the samples through a FitnessAccumulator. Outputs
+	// handed over as matrices are read into columns first
+
+	private static final long serialVersionUID = 1L;
+
+	public abstract FitnessAccumulator newAccumulator();
+
+	@Override
+	public double computeFitness(INDArray labels, INDArray outputs) {
+		return computeFitness(labels.dup('f').data().asDouble(), outputs.dup('f').data().asDouble(), labels.rows());
+	}
+
+	@Override
+	public double computeFitness(double[] labels, double[] outputs, int batchSize) {
+		FitnessAccumulator accumulator = newAccumulator();
+		accumulator.add(labels, outputs, batchSize, 0, batchSize);
+		return accumulator.getFitness();
+	}
+
+	@Override
+	public double[] computeSampleFitness(double[] labels, double[] outputs, int batchSize) {
+		FitnessAccumulator accumulator = newAccumulator();
+		double[] fitness = new double[batchSize];
+
+		for (int s = 0; s < batchSize; s++) {
+			accumulator.reset();
+			accumulator.add(labels, outputs, batchSize, s, s + 1);
+			fitness[s] = accumulator.getFitness();
+		}
+
+		return fitness;
+	}
+}
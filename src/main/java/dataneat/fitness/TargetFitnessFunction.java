@@ -16,9 +16,52 @@
 package dataneat.fitness;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
 
 public interface TargetFitnessFunction {
 
 	//fitness functions take the network output as a param and return a fitness value
 	public double computeFitness(INDArray labels, INDArray outputs);
+
+	// the same on column major labels and outputs, output i of sample s at
+	// i * batchSize + s, as the evaluators produce them. The default builds
+	// the matrices
+	public default double computeFitness(double[] labels, double[] outputs, int batchSize) {
+		int[] shape = new int[] { batchSize, outputs.length / batchSize };
+		return computeFitness(Nd4j.create(labels, shape, 'f'), Nd4j.create(outputs, shape, 'f'));
+	}
+
+	// fitness of every sample on its own, used to tell which samples a
+	// network gets wrong. The default scores the samples one at a time
+	public default double[] computeSampleFitness(double[] labels, double[] outputs, int batchSize) {
+		int numOutputs = outputs.length / batchSize;
+		double[] fitness = new double[batchSize];
+		double[] sampleLabels = new double[numOutputs], sampleOutputs = new double[numOutputs];
+
+		for (int s = 0; s < batchSize; s++) {
+			for (int i = 0; i < numOutputs; i++) {
+				sampleLabels[i] = labels[i * batchSize + s];
+				sampleOutputs[i] = outputs[i * batchSize + s];
+			}
+			fitness[s] = computeFitness(sampleLabels, sampleOutputs, 1);
+		}
+
+		return fitness;
+	}
+
+	// fitness of a batch from the fitness of the first count chunks it was
+	// split into, an estimate until count covers all of them. sizes holds
+	// the number of samples in each chunk. The default suits fitness
+	// averaged over the samples
+	public default double combine(double[] fitness, int[] sizes, int count) {
+		double sum = 0.0;
+		int samples = 0;
+
+		for (int c = 0; c < count; c++) {
+			sum += fitness[c] * sizes[c];
+			samples += sizes[c];
+		}
+
+		return sum / samples;
+	}
 }
@@ -70,7 +70,7 @@ public class LinkDB implements Serializable {
 	}
 
 	public LinkGene randomLink() {
-		int index = RandGen.rand.nextInt(linkGeneList.size());
+		int index = RandGen.current().nextInt(linkGeneList.size());
 		return linkGeneList.get(index);
 	}	
 
@@ -96,6 +96,15 @@ public class LinkDB implements Serializable {
 		linksByTermination.put(new Point(link.getFromNeuronID(),link.getToNeuronID()), link);
 	}
 	
+	public void renumber(LinkGene link, int id) {
+		// replaces the provisional innovation id of a staged link
+		if (linkGeneMap.get(link.getInnovationID()) == link) {
+			linkGeneMap.remove(link.getInnovationID());
+			linkGeneMap.put(id, link);
+		}
+		link.setInnovationID(id);
+	}
+
 	public void sortById() {
 		//only sorts the list
 		linkGeneList.sort((link1, link2) -> link1.getInnovationID().compareTo(link2.getInnovationID()));
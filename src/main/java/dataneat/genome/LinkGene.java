@@ -48,14 +48,14 @@ public class LinkGene implements Serializable {
 
 	public void randomizeWeight() {
 
-		weight = (RandGen.rand.nextDouble() * (maxWeight - minWeight) + minWeight);
+		weight = (RandGen.current().nextDouble() * (maxWeight - minWeight) + minWeight);
 	}
 
 	public void perturbWeight(double power) {
 				
 		double maxDelta = Math.abs(weight * power);
 		
-		weight += (RandGen.rand.nextDouble() * (2 * maxDelta) - maxDelta);
+		weight += (RandGen.current().nextDouble() * (2 * maxDelta) - maxDelta);
 		
 		checkBounds();
 	}
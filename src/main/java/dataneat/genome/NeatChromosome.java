@@ -16,6 +16,8 @@
 package dataneat.genome;
 
 import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.graphstream.graph.Graph;
 import org.graphstream.graph.implementations.SingleGraph;
@@ -29,7 +31,8 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 
 	private static final long serialVersionUID = 1L;
 	private static final String MAXIMIZE = "maximize";
-	private static int chromCounter = 0;
+	// chromosomes are copied on several threads while reproducing
+	private static final AtomicInteger chromCounter = new AtomicInteger();
 
 	private int species = 0;
 	private boolean isSolution = false, maximize = false;
@@ -41,6 +44,10 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 
 	private NeuronDB neurons;
 	private LinkDB links;
+
+	// the chromosome this one was copied from, evaluators can start from its
+	// activations. Weak, so that lineages do not keep old generations alive
+	private transient WeakReference<NeatChromosome> parent;
 	
 	public NeatChromosome(){}
 
@@ -103,8 +110,12 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 	}
 
 	public NeatChromosome(NeatChromosome parent) {
+		this(parent, true);
+	}
+
+	private NeatChromosome(NeatChromosome parent, boolean numbered) {
 		super(parent.getHolder());
-		init();
+		init(numbered);
 
 		this.species = parent.getSpecies();
 		this.fitness = parent.getFitness();
@@ -113,6 +124,7 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 		this.links = new LinkDB(parent.getLinkDB());
 
 		this.neurons = new NeuronDB(parent.getNeurons());
+		this.parent = new WeakReference<NeatChromosome>(parent);
 	}
 
 	/*
@@ -129,16 +141,43 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 	 */
 
 	public boolean checkEligible(double mutationRate) {
-		return (RandGen.rand.nextDouble() < mutationRate);
+		return (RandGen.current().nextDouble() < mutationRate);
 	}
 
 	private void assignID() {
-		id = chromCounter;
-		chromCounter++;
+		id = chromCounter.getAndIncrement();
+	}
+
+	public static NeatChromosome offspring(NeatChromosome parent) {
+		// a copy made while reproducing. Offspring are made in parallel, so
+		// they only get their id from number once they are put in order
+		return new NeatChromosome(parent, false);
+	}
+
+	public static NeatChromosome snapshot(NeatChromosome chrom) {
+		// a copy that stands in for chrom while chrom goes on changing. It
+		// keeps the id of chrom instead of taking a new one, and has no parent
+		NeatChromosome copy = new NeatChromosome(chrom, false);
+		copy.id = chrom.id;
+		copy.parent = null;
+		return copy;
+	}
+
+	public void number() {
+		// the id of an offspring, chromosomes that have one keep it
+		if (id < 0) {
+			assignID();
+		}
 	}
 
 	private void init() {
-		assignID();
+		init(true);
+	}
+
+	private void init(boolean numbered) {
+		if (numbered) {
+			assignID();
+		}
 		maximize = Boolean.parseBoolean(getParams().getProperty(MAXIMIZE));
 		initFitness();
 	}
@@ -220,7 +259,7 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 			return;
 		}
 
-		int linkIndex = RandGen.rand.nextInt(links.size());
+		int linkIndex = RandGen.current().nextInt(links.size());
 		LinkGene link = links.getByIndex(linkIndex);
 		Integer fromId = new Integer(link.getFromNeuronID());
 		Integer toId = new Integer(link.getToNeuronID());
@@ -245,7 +284,7 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 		int id = 0;
 		int index = 0;
 		do {
-			index = RandGen.rand.nextInt(size);
+			index = RandGen.current().nextInt(size);
 			id = neurons.getHiddenIds().get(index);
 			n = neurons.getById(id);
 			attempts++;
@@ -311,7 +350,7 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 		}
 
 		// deal with assigning the connections innovation id
-		connection.setInnovationID(InnovationDatabase.getInnovationDatabase().evaluateGene(connection));
+		connection.setInnovationID(InnovationDatabase.getInnovationDatabase().evaluateGene(connection, links));
 
 		links.add(connection);
 
@@ -382,7 +421,7 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 
 		// grab a random link
 		do {
-			splitLink = RandGen.rand.nextInt(links.size());
+			splitLink = RandGen.current().nextInt(links.size());
 			count++;
 		} while ((links.getByIndex(splitLink).isBias() || links.getByIndex(splitLink).isAlreadySplit()) && count < 10);
 
@@ -514,6 +553,41 @@ public class NeatChromosome extends BaseNeat implements Comparable<NeatChromosom
 		return testFitness;
 	}
 
+	public long getContentHash() {
+		// hash of everything an evaluation depends on: the neurons in
+		// evaluation order with their types, and the enabled links with their
+		// weights, in any order. Genes are mutated in place, so it is worked
+		// out on every call
+		long neuronHash = neurons.sizeWithBias();
+		for (int i = 0; i < neurons.sizeWithBias(); i++) {
+			NeuronGene n = neurons.getByIndex(i);
+			neuronHash = mix(neuronHash * 31 + ((long) n.getID() << 8) + n.getNeuronType().ordinal());
+		}
+
+		long linkHash = 0;
+		for (int i = 0; i < links.size(); i++) {
+			LinkGene l = links.getByIndex(i);
+			if (l.isEnabled()) {
+				long ends = ((long) l.getFromNeuronID() << 32) | (l.getToNeuronID() & 0xffffffffL);
+				linkHash += mix(mix(ends) ^ Double.doubleToLongBits(l.getWeight()));
+			}
+		}
+
+		return mix(neuronHash ^ mix(linkHash));
+	}
+
+	private static long mix(long z) {
+		// splitmix64 finalizer
+		z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+		z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+		return z ^ (z >>> 31);
+	}
+
+	public NeatChromosome getParent() {
+		// null for chromosomes built from scratch, or once the parent is gone
+		return parent == null ? null : parent.get();
+	}
+
 	public void setTestFitness(double testFitness) {
 		this.testFitness = testFitness;
 	}
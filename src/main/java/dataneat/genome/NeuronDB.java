@@ -93,18 +93,18 @@ public class NeuronDB implements Serializable {
 	}
 
 	public NeuronGene randomNeuron() {
-		int index = RandGen.rand.nextInt(neuronList.size());
+		int index = RandGen.current().nextInt(neuronList.size());
 		return neuronList.get(index);
 	}
 	
 	public NeuronGene randomInput() {
-		int index = RandGen.rand.nextInt(inputIds.size());
+		int index = RandGen.current().nextInt(inputIds.size());
 		int id = inputIds.get(index);
 		return getById(id);
 	}
 	
 	public NeuronGene randomOutput() {
-		int index = RandGen.rand.nextInt(outputIds.size());
+		int index = RandGen.current().nextInt(outputIds.size());
 		int id = outputIds.get(index);
 		return getById(id);
 	}
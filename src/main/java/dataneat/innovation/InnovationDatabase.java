@@ -16,14 +16,25 @@
 package dataneat.innovation;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
+import dataneat.genome.LinkDB;
 import dataneat.genome.LinkGene;
 
 public class InnovationDatabase {
-	
+	// link innovations by their terminations. Chromosomes that reproduce on
+	// several threads at once stage their new links instead: a link the
+	// database has not seen gets a negative provisional id, and once every
+	// task is done the stagings are committed in task order, so the real ids
+	// come out the same no matter which thread ran what
+
 	private int innovationCount = 0;
-	private List<LinkInnovation> links = new ArrayList<LinkInnovation>();	
+	private Map<Long, LinkInnovation> links = new ConcurrentHashMap<Long, LinkInnovation>();
+	// staging of the task running on this thread, if any
+	private final ThreadLocal<Staging> staging = new ThreadLocal<Staging>();
 
 	private InnovationDatabase(){};
 	
@@ -36,43 +47,95 @@ public class InnovationDatabase {
 		
 		return InnovationDatabaseHolder.INSTANCE;
 	}
-	
-	private void addInnovation(int fromNeuron, int toNeuron) {
-		
-		LinkInnovation innovation = new LinkInnovation();
-		innovation.setInnovationID(innovationCount);
-		
-		innovationCount++;
-		
-		innovation.setFromNeuron(fromNeuron);
-		innovation.setToNeuron(toNeuron);
-		
-		links.add(innovation);		
-	}	
-	
+
+	public static class Staging {
+		// new links of one task, in the order they were made
+		private final List<Long> keys = new ArrayList<Long>();
+		private final List<LinkDB> owners = new ArrayList<LinkDB>();
+		private final List<LinkGene> genes = new ArrayList<LinkGene>();
+		private final Map<Long, Integer> provisional = new HashMap<Long, Integer>();
+	}
+
+	private static long key(int fromNeuron, int toNeuron) {
+		return ((long) fromNeuron << 32) | (toNeuron & 0xFFFFFFFFL);
+	}
+
+	private synchronized int assign(int fromNeuron, int toNeuron) {
+		LinkInnovation innovation = links.get(key(fromNeuron, toNeuron));
+
+		if (innovation == null) {
+			innovation = new LinkInnovation();
+			innovation.setInnovationID(innovationCount);
+
+			innovationCount++;
+
+			innovation.setFromNeuron(fromNeuron);
+			innovation.setToNeuron(toNeuron);
+
+			links.put(key(fromNeuron, toNeuron), innovation);
+		}
+
+		return innovation.getInnovationID();
+	}
+
 	public int evaluateGene (LinkGene link) {
-		
-		int fromNeuron = link.getFromNeuronID();
-		int toNeuron = link.getToNeuronID();
-		int ID = -1;
-		
-		for (LinkInnovation l : links) {
-			
-			if (fromNeuron == (l.getFromNeuron()) && toNeuron == (l.getToNeuron())) {
-				
-				ID = l.getInnovationID();
-				break;
+
+		return assign(link.getFromNeuronID(), link.getToNeuronID());
+	}
+
+	public int evaluateGene(LinkGene link, LinkDB owner) {
+		// the same, a new link made inside a staged task gets a provisional id
+		// that commit replaces in owner
+		Staging s = staging.get();
+		LinkInnovation known = links.get(key(link.getFromNeuronID(), link.getToNeuronID()));
+
+		if (s == null || known != null) {
+			return known != null ? known.getInnovationID() : evaluateGene(link);
+		}
+
+		long k = key(link.getFromNeuronID(), link.getToNeuronID());
+		Integer id = s.provisional.get(k);
+
+		if (id == null) {
+			id = -(s.provisional.size() + 1);
+			s.provisional.put(k, id);
+		}
+
+		s.keys.add(k);
+		s.owners.add(owner);
+		s.genes.add(link);
+
+		return id;
+	}
+
+	public Staging stage(Runnable task) {
+		// runs task with its new links staged
+		Staging previous = staging.get();
+		Staging s = new Staging();
+		staging.set(s);
+
+		try {
+			task.run();
+		} finally {
+			if (previous == null) {
+				staging.remove();
+			} else {
+				staging.set(previous);
 			}
 		}
-		
-		if (ID < 0) {
-			
-			ID = innovationCount;
-			addInnovation(fromNeuron, toNeuron);
+
+		return s;
+	}
+
+	public void commit(Staging s) {
+		// gives the staged links their real ids, stagings must be committed
+		// in a fixed order
+		for (int i = 0; i < s.keys.size(); i++) {
+			long k = s.keys.get(i);
+			int id = assign((int) (k >> 32), (int) k);
+			s.owners.get(i).renumber(s.genes.get(i), id);
 		}
-		
-		return ID;
-	}	
+	}
 	
 	public int getInnovationCount() {
 		return innovationCount;
@@ -1,5 +1,7 @@
 package dataneat.monitor;
 
+import java.util.List;
+
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
 import dataneat.utils.PropertiesHolder;
@@ -46,6 +48,12 @@ public class FitnessMonitor extends BaseNeat {
 		}
 	}
 
+	public void updateTest(List<NeatChromosome> population) {
+		for (NeatChromosome chrom : population) {
+			updateTest(chrom);
+		}
+	}
+
 	private void maximizeUpdateTrain(NeatChromosome currentBest) {
 		if (bestTrainingFitness.getFitness() < (currentBest.getFitness() - delta)) {
 			bestTrainingFitness = new NeatChromosome(currentBest);
@@ -49,6 +49,18 @@ public class RunData extends BaseNeat {
 		updateMovingAverage(bestFitness, bestTest, 100);
 	}
 
+	public void updateTest(int from, double bestTest) {
+		// test scores that came in after the rounds from index from on were
+		// logged, those rounds get the test fitness they would have had
+		for (int i = from; i < rounds.size(); i++) {
+			rounds.get(i).setBestTest(bestTest);
+		}
+
+		for (int i = Math.max(0, avgTest.size() - (rounds.size() - from)); i < avgTest.size(); i++) {
+			avgTest.set(i, bestTest);
+		}
+	}
+
 	private void updateMovingAverage(double bestFitness, double bestTest, int window) {
 		avgTrain.add(bestFitness);
 		avgTest.add(bestTest);
@@ -21,6 +21,7 @@ import dataneat.base.BaseNeat;
 import dataneat.genome.ConnectivityType;
 import dataneat.genome.NeatChromosome;
 import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandomStream;
 
 public class AddLinkOperator extends BaseNeat implements MutationOperator {
 
@@ -53,7 +54,7 @@ public class AddLinkOperator extends BaseNeat implements MutationOperator {
 		}
 	}
 
-	public void operate(List<NeatChromosome> population) {
+	public void operate(List<NeatChromosome> population, RandomStream random) {
 
 		if (population == null) {
 			// Population list empty:
@@ -68,8 +69,11 @@ public class AddLinkOperator extends BaseNeat implements MutationOperator {
 			return;
 		}
 
-		population.stream().filter(t -> t.checkEligible(mutationRate))
-				.forEach(t -> t.mutateAddLink(connectionAttemptLimit, connectionType));
+		Reproduction.forEach(random, population, t -> {
+			if (t.checkEligible(mutationRate)) {
+				t.mutateAddLink(connectionAttemptLimit, connectionType);
+			}
+		});
 
 	}
 
@@ -20,6 +20,7 @@ import java.util.List;
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
 import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandomStream;
 
 public class AddNodeOperator extends BaseNeat implements MutationOperator {
 
@@ -34,7 +35,7 @@ public class AddNodeOperator extends BaseNeat implements MutationOperator {
 		mutationRate = Double.parseDouble(getParams().getProperty(ADD_NODE_RATE));
 	}
 
-	public void operate(List<NeatChromosome> population) {
+	public void operate(List<NeatChromosome> population, RandomStream random) {
 
 		if (population == null) {
 			// Population list empty:
@@ -47,7 +48,11 @@ public class AddNodeOperator extends BaseNeat implements MutationOperator {
 			return;
 		}
 
-		population.stream().filter(t -> t.checkEligible(mutationRate)).forEach(t -> t.mutateAddNode());
+		Reproduction.forEach(random, population, t -> {
+			if (t.checkEligible(mutationRate)) {
+				t.mutateAddNode();
+			}
+		});
 	}
 
 	public double getMutationRate() {
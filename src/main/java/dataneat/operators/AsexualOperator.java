@@ -17,19 +17,19 @@ package dataneat.operators;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import dataneat.genome.NeatChromosome;
-import dataneat.utils.RandGen;
 
 public class AsexualOperator {
 
-	public List<NeatChromosome> operate(List<NeatChromosome> chroms, int numOffspring) {
+	public List<NeatChromosome> operate(List<NeatChromosome> chroms, int numOffspring, Random random) {
 		
 		List<NeatChromosome> offspring = new ArrayList<NeatChromosome>();
 		
 		for (int i = 0; i<numOffspring; i++) {
-			int index = RandGen.rand.nextInt(chroms.size());
-			NeatChromosome clone = new NeatChromosome(chroms.get(index));
+			int index = random.nextInt(chroms.size());
+			NeatChromosome clone = NeatChromosome.offspring(chroms.get(index));
 			offspring.add(clone);
 		}
 		
@@ -28,7 +28,7 @@ public class CloneOperator {
 		offspring.add(chrom);
 		
 		for (int i = 0; i < (numOffspring - 1); i++) {
-			NeatChromosome clone = new NeatChromosome(chrom);
+			NeatChromosome clone = NeatChromosome.offspring(chrom);
 			offspring.add(clone);
 		}
 		
@@ -23,21 +23,32 @@ import org.nd4j.linalg.dataset.api.DataSet;
 import dataneat.base.BaseNeat;
 import dataneat.fitness.TargetFitnessFunction;
 import dataneat.genome.NeatChromosome;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.Phenotypes;
+import dataneat.phenotype.PopulationEvaluator;
+import dataneat.phenotype.PreparedInput;
+import dataneat.phenotype.PrimitiveNetwork;
+import dataneat.utils.EvaluationExecutor;
 import dataneat.utils.PropertiesHolder;
 
 public class CurrTimeFitnessOperator extends BaseNeat implements TargetFitnessOperator {
 
 	private static final String FITNESS_FUNCTION = "fitnessFunction";
 	private static final String MAXIMIZE = "maximize";		
-	private boolean maximize = true;		
+	private static final String FLOAT_EVAL = "floatEval";
+	private boolean maximize = true, floatEval = false;
 	private TargetFitnessFunction fitnessFunction;
+	private PopulationEvaluator evaluator;
+	private FitnessRace race;
+	private FitnessCache cache;
+	private FitnessSampler sampler;
 	private INDArray stabil;
 
 	public CurrTimeFitnessOperator(PropertiesHolder p, INDArray stabilMatrix) {
 		super(p);
 		stabil = stabilMatrix;
 		maximize = Boolean.parseBoolean(getParams().getProperty(MAXIMIZE));		
+		floatEval = Integer.parseInt(getParams().getProperty(FLOAT_EVAL)) == 1;
+		evaluator = new PopulationEvaluator(p);
 
 		try {
 			fitnessFunction = (TargetFitnessFunction) Class.forName(getParams().getProperty(FITNESS_FUNCTION))
@@ -47,10 +58,18 @@ public class CurrTimeFitnessOperator extends BaseNeat implements TargetFitnessOp
 			e.printStackTrace();
 		}
 
+		race = new FitnessRace(p, fitnessFunction, maximize);
+		cache = new FitnessCache(p);
+		sampler = new FitnessSampler(p, fitnessFunction);
+
 	}
 
 	
-	public void operate(List<NeatChromosome> population, DataSet data) {
+	public void operate(List<NeatChromosome> population, DataSet batch) {
+		operate(population, batch, null, null);
+	}
+
+	public void operate(List<NeatChromosome> population, DataSet batch, DataSet test, TestFitnessOperator tester) {
 
 		if (population == null) {
 			// Population list empty:
@@ -59,8 +78,56 @@ public class CurrTimeFitnessOperator extends BaseNeat implements TargetFitnessOp
 			return;
 		}
 
-		// do the fitness evaluations on each chromosome
-		population.parallelStream().forEach(chrom -> evaluate(chrom, data));
+		// every network is laid out once, for the batch and the test set
+		Phenotypes phenotypes = new Phenotypes(population);
+
+		// the whole population is evaluated on the same subset of the batch
+		DataSet data = sampler.sample(batch,
+				(chroms, sample) -> evaluator.computeOutputColumns(chroms, PreparedInput.of(sample), phenotypes));
+
+		// column major features and labels shared by all the networks
+		PreparedInput input = PreparedInput.of(data);
+
+		// chromosomes identical to one another or to an already evaluated one
+		// are only evaluated once
+		List<NeatChromosome> distinct = cache.begin(population, input);
+		double[] fitness;
+		boolean[] exact = null;
+
+		if (race.isEnabled()) {
+			// the same, chunk by chunk for the chromosomes still racing
+			fitness = race.run(distinct, data, (chroms, chunk) -> {
+				PreparedInput chunkInput = PreparedInput.of(chunk);
+				return computeFitness(evaluator.computeOutputColumns(chroms, chunkInput, phenotypes), chunkInput);
+			});
+			exact = race.getFinished();
+		} else {
+			// compute the whole population on the entire training set, then
+			// do the fitness evaluations on each chromosome
+			fitness = computeFitness(evaluator.computeOutputColumns(distinct, input, phenotypes), input);
+		}
+
+		sampler.toBatch(fitness, batch, data);
+		cache.finish(fitness, exact, NeatChromosome::setFitness);
+
+		if (floatEval && !population.isEmpty()) {
+			// the champion is reported, so it is scored again in double
+			NeatChromosome best = population.get(0);
+			for (NeatChromosome chrom : population) {
+				if (maximize ? chrom.getFitness() > best.getFitness() : chrom.getFitness() < best.getFitness()) {
+					best = chrom;
+				}
+			}
+
+			PrimitiveNetwork net = new PrimitiveNetwork(phenotypes.getPlan(best), phenotypes.getWeights(best),
+					getHolder());
+			net.computeNetCurrentTimestep(input);
+			double exactFitness = fitnessFunction.computeFitness(input.getLabelColumns(), net.getOutputColumns(),
+					data.numExamples());
+			cache.update(best, sampler.toBatch(exactFitness, batch, data), NeatChromosome::setFitness);
+		}
+
+		sampler.update(population);
 
 		// we need the worst fitness in the population, this depends on if
 		// fitness is maximized or minimized
@@ -91,19 +158,18 @@ public class CurrTimeFitnessOperator extends BaseNeat implements TargetFitnessOp
 		for (NeatChromosome chrom : population) {
 			chrom.setAdjustedFitness(Math.abs(worstFitness - chrom.getFitness()));
 		}
-	}
 
-	private void evaluate(NeatChromosome chrom, DataSet data) {
-		// this function evaluates a single chromosome
-
-		// create phenotype
-		Network net = new Network(chrom, getHolder(),stabil);		
+		if (tester != null) {
+			tester.operate(population, test, phenotypes);
+		}
+	}
 
-		// compute on entire training set
-		net.computeNetCurrentTimestep(data.getFeatures());
-				
-		// set fitness
-		double fitness = fitnessFunction.computeFitness(data.getLabels(), net.getOutput());
-		chrom.setFitness(fitness);
-	}	
+	private double[] computeFitness(List<double[]> outputs, PreparedInput input) {
+		// every output costs the same to score, the label columns are shared
+		double[] labels = input.getLabelColumns();
+		double[] fitness = new double[outputs.size()];
+		EvaluationExecutor.getEvaluationExecutor().forEach(outputs.size(), i -> 1.0,
+				i -> fitness[i] = fitnessFunction.computeFitness(labels, outputs.get(i), input.getBatchSize()));
+		return fitness;
+	}
 }
@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.operators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ObjDoubleConsumer;
+
+import dataneat.base.BaseNeat;
+import dataneat.genome.LinkDB;
+import dataneat.genome.LinkGene;
+import dataneat.genome.NeatChromosome;
+import dataneat.phenotype.PreparedInput;
+import dataneat.phenotype.TopologyKey;
+import dataneat.utils.PropertiesHolder;
+
+public class FitnessCache extends BaseNeat {
+	// fitness of the chromosomes already evaluated on a batch, keyed by their
+	// content hash. Clones, elites and the chromosomes correctSize duplicates
+	// are identical to one another or to a member of the last generation, so
+	// they are evaluated once and the rest get the same fitness. Only this
+	// generation and the last are kept, and everything is dropped when the
+	// batch changes. Batches are compared by their features and labels, so
+	// a batch built again for a new generation still hits, while a subset
+	// the sampler draws anew only shares fitness within its generation. A
+	// hash only finds candidates, the topology and weights are compared
+	// before a fitness is shared, so a collision costs an evaluation
+	// instead of handing out another chromosome's fitness.
+	// Fitness set by an operator goes through begin, finish and update
+
+	private static final long serialVersionUID = 1L;
+	private static final String FITNESS_CACHE = "fitnessCache";
+	private boolean enabled = true;
+
+	private PreparedInput batch;
+	private Map<Long, Entry> previous = new HashMap<Long, Entry>();
+	private Map<Long, Entry> current = new HashMap<Long, Entry>();
+
+	// state of the population between begin and finish
+	private List<NeatChromosome> population;
+	private long[] hashes;
+	private Genome[] genomes;
+	// index in the evaluated list of each chromosome, -1 when cached
+	private int[] evaluatedAs;
+	private double[] cached;
+
+	private static class Genome {
+		// everything an evaluation depends on: the topology, and the weights
+		// of the enabled links in the order of the topology's sorted links
+		private final TopologyKey topology;
+		private final double[] weights;
+
+		Genome(NeatChromosome chrom) {
+			topology = new TopologyKey(chrom);
+			LinkDB links = chrom.getLinks();
+			List<LinkGene> enabled = new ArrayList<LinkGene>(links.size());
+
+			for (int i = 0; i < links.size(); i++) {
+				if (links.getByIndex(i).isEnabled()) {
+					enabled.add(links.getByIndex(i));
+				}
+			}
+
+			enabled.sort((a, b) -> a.getFromNeuronID() != b.getFromNeuronID()
+					? Integer.compare(a.getFromNeuronID(), b.getFromNeuronID())
+					: Integer.compare(a.getToNeuronID(), b.getToNeuronID()));
+			weights = new double[enabled.size()];
+
+			for (int i = 0; i < weights.length; i++) {
+				weights[i] = enabled.get(i).getWeight();
+			}
+		}
+
+		boolean matches(Genome other) {
+			return topology.equals(other.topology) && Arrays.equals(weights, other.weights);
+		}
+	}
+
+	private static class Entry {
+		private final Genome genome;
+		private final double fitness;
+
+		Entry(Genome genome, double fitness) {
+			this.genome = genome;
+			this.fitness = fitness;
+		}
+	}
+
+	public FitnessCache(PropertiesHolder p) {
+		super(p);
+		enabled = Integer.parseInt(getParams().getProperty(FITNESS_CACHE)) == 1;
+	}
+
+	public List<NeatChromosome> begin(List<NeatChromosome> population, PreparedInput data) {
+		// returns the chromosomes that still have to be evaluated, once each
+		this.population = population;
+		int popSize = population.size();
+		evaluatedAs = new int[popSize];
+		cached = new double[popSize];
+
+		if (!enabled) {
+			for (int i = 0; i < popSize; i++) {
+				evaluatedAs[i] = i;
+			}
+			return population;
+		}
+
+		if (batch == null || !batch.sameBatch(data)) {
+			previous.clear();
+			current.clear();
+			batch = data;
+		}
+
+		Map<Long, Entry> temp = previous;
+		previous = current;
+		current = temp;
+		current.clear();
+
+		hashes = new long[popSize];
+		genomes = new Genome[popSize];
+		for (int i = 0; i < popSize; i++) {
+			hashes[i] = population.get(i).getContentHash();
+			genomes[i] = new Genome(population.get(i));
+		}
+
+		List<NeatChromosome> distinct = new ArrayList<NeatChromosome>();
+		// first chromosome of the population evaluated for each hash
+		Map<Long, Integer> seen = new HashMap<Long, Integer>();
+
+		for (int i = 0; i < popSize; i++) {
+			Entry entry = previous.get(hashes[i]);
+
+			if (entry != null && entry.genome.matches(genomes[i])) {
+				cached[i] = entry.fitness;
+				evaluatedAs[i] = -1;
+				current.put(hashes[i], entry);
+				continue;
+			}
+
+			Integer first = seen.get(hashes[i]);
+			if (first != null && genomes[first].matches(genomes[i])) {
+				evaluatedAs[i] = evaluatedAs[first];
+			} else {
+				if (first == null) {
+					seen.put(hashes[i], i);
+				}
+				evaluatedAs[i] = distinct.size();
+				distinct.add(population.get(i));
+			}
+		}
+
+		return distinct;
+	}
+
+	public void finish(double[] fitness, boolean[] exact, ObjDoubleConsumer<NeatChromosome> setter) {
+		// fitness of the chromosomes begin returned, in that order. Only exact
+		// fitness is kept for later generations, a null exact means all of it
+		for (int i = 0; i < population.size(); i++) {
+			int e = evaluatedAs[i];
+			setter.accept(population.get(i), e < 0 ? cached[i] : fitness[e]);
+
+			if (enabled && e >= 0 && (exact == null || exact[e])) {
+				current.put(hashes[i], new Entry(genomes[i], fitness[e]));
+			}
+		}
+	}
+
+	public void update(NeatChromosome chrom, double fitness, ObjDoubleConsumer<NeatChromosome> setter) {
+		// a better estimate of the fitness of chrom, its duplicates get it too
+		if (!enabled) {
+			setter.accept(chrom, fitness);
+			return;
+		}
+
+		long hash = chrom.getContentHash();
+		Genome genome = new Genome(chrom);
+		current.put(hash, new Entry(genome, fitness));
+
+		for (int i = 0; i < population.size(); i++) {
+			if (hashes[i] == hash && genomes[i].matches(genome)) {
+				setter.accept(population.get(i), fitness);
+			}
+		}
+	}
+}
@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.operators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.nd4j.linalg.dataset.api.DataSet;
+
+import dataneat.base.BaseNeat;
+import dataneat.fitness.TargetFitnessFunction;
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.PropertiesHolder;
+
+public class FitnessRace extends BaseNeat {
+	// racing evaluation for the fitness operators. The batch is split into
+	// racingChunks interleaved chunks (every racingChunks-th sample, so a
+	// sorted batch does not bias the first chunks) that the population works
+	// through in lockstep. After each chunk a chromosome is dropped from the
+	// race once its running fitness, less racingConfidence standard errors
+	// in its favour, still cannot beat the racingQuantile best running
+	// fitness of the chromosomes still racing, all over the same chunks. The
+	// error is taken over the chunks each scaled up to the whole batch, the
+	// scale the running fitness is on. Dropped chromosomes get the
+	// conservative end of that bound, their running fitness less the bound
+	// against them. Chromosomes that finish the race get the same fitness as
+	// a single evaluation on the whole batch
+
+	private static final long serialVersionUID = 1L;
+	private static final String RACING_CHUNKS = "racingChunks";
+	private static final String RACING_QUANTILE = "racingQuantile";
+	private static final String RACING_CONFIDENCE = "racingConfidence";
+	private int numChunks = 1;
+	private double quantile = 0.5, confidence = 2.0;
+	private boolean maximize = false;
+	private TargetFitnessFunction fitnessFunction;
+
+	// chunks of the last batch, a batch seen again is not split again
+	private DataSet chunked;
+	private List<DataSet> chunks;
+	private int[] sizes;
+	private boolean[] finished;
+
+	public interface ChunkEvaluator {
+		// fitness of each chromosome on the chunk, in list order
+		public double[] evaluate(List<NeatChromosome> chroms, DataSet chunk);
+	}
+
+	public FitnessRace(PropertiesHolder p, TargetFitnessFunction fitnessFunction, boolean maximize) {
+		super(p);
+		this.fitnessFunction = fitnessFunction;
+		this.maximize = maximize;
+		numChunks = Integer.parseInt(getParams().getProperty(RACING_CHUNKS));
+		quantile = Double.parseDouble(getParams().getProperty(RACING_QUANTILE));
+		confidence = Double.parseDouble(getParams().getProperty(RACING_CONFIDENCE));
+	}
+
+	public boolean isEnabled() {
+		return numChunks > 1;
+	}
+
+	public double[] run(List<NeatChromosome> population, DataSet data, ChunkEvaluator evaluator) {
+		// fitness of every chromosome, in list order
+		split(data);
+		int popSize = population.size();
+		double[][] fitness = new double[popSize][chunks.size()];
+		int[] done = new int[popSize];
+		// the conservative fitness of the dropped chromosomes, NaN for the rest
+		double[] dropped = new double[popSize];
+		Arrays.fill(dropped, Double.NaN);
+		List<Integer> racing = new ArrayList<Integer>();
+
+		for (int i = 0; i < popSize; i++) {
+			racing.add(i);
+		}
+
+		for (int c = 0; c < chunks.size() && !racing.isEmpty(); c++) {
+			List<NeatChromosome> chroms = new ArrayList<NeatChromosome>(racing.size());
+			for (int i : racing) {
+				chroms.add(population.get(i));
+			}
+
+			double[] chunkFitness = evaluator.evaluate(chroms, chunks.get(c));
+
+			for (int r = 0; r < racing.size(); r++) {
+				fitness[racing.get(r)][c] = chunkFitness[r];
+				done[racing.get(r)]++;
+			}
+
+			// at least two chunks for an error estimate, none left to save
+			// after the last one
+			if (c > 0 && c < chunks.size() - 1) {
+				racing = drop(racing, fitness, done, c + 1, dropped);
+			}
+		}
+
+		double[] result = new double[popSize];
+		finished = new boolean[popSize];
+
+		for (int i = 0; i < popSize; i++) {
+			result[i] = Double.isNaN(dropped[i]) ? fitnessFunction.combine(fitness[i], sizes, done[i]) : dropped[i];
+			finished[i] = done[i] == chunks.size();
+		}
+
+		return result;
+	}
+
+	public boolean[] getFinished() {
+		// which chromosomes of the last run got their full batch fitness
+		return finished;
+	}
+
+	private List<Integer> drop(List<Integer> racing, double[][] fitness, int[] done, int count, double[] dropped) {
+		// the racers whose bound still beats the quantile of the racers'
+		// running fitness, all taken over the first count chunks. The others
+		// get their conservative fitness in dropped
+		double[] running = new double[fitness.length];
+		double[] sorted = new double[racing.size()];
+		for (int r = 0; r < racing.size(); r++) {
+			int i = racing.get(r);
+			running[i] = fitnessFunction.combine(fitness[i], sizes, done[i]);
+			sorted[r] = running[i];
+		}
+
+		Arrays.sort(sorted);
+		int rank = (int) (quantile * (sorted.length - 1));
+		double threshold = maximize ? sorted[sorted.length - 1 - rank] : sorted[rank];
+
+		List<Integer> still = new ArrayList<Integer>(racing.size());
+
+		for (int i : racing) {
+			double[] scaled = new double[count];
+			double mean = 0.0, var = 0.0;
+			for (int c = 0; c < count; c++) {
+				scaled[c] = scale(fitness[i][c], c);
+				mean += scaled[c];
+			}
+			mean /= count;
+			for (int c = 0; c < count; c++) {
+				var += (scaled[c] - mean) * (scaled[c] - mean);
+			}
+
+			// standard error of the running fitness, from its spread over
+			// the chunks seen so far
+			double bound = confidence * Math.sqrt(var / (count - 1) / count);
+			boolean behind = maximize ? running[i] + bound < threshold : running[i] - bound > threshold;
+
+			if (!behind) {
+				still.add(i);
+			} else {
+				dropped[i] = maximize ? running[i] - bound : running[i] + bound;
+			}
+		}
+
+		return still;
+	}
+
+	private double scale(double chunkFitness, int c) {
+		// the fitness of chunk c alone taken for the whole batch, as combine
+		// would extrapolate it
+		int others = 0;
+		for (int size : sizes) {
+			others += size;
+		}
+		others -= sizes[c];
+
+		return fitnessFunction.combine(new double[] { chunkFitness, 0.0 }, new int[] { sizes[c], others }, 1);
+	}
+
+	private void split(DataSet data) {
+		if (data == chunked) {
+			return;
+		}
+
+		int numExamples = data.numExamples();
+		int count = Math.min(numChunks, numExamples);
+		chunks = new ArrayList<DataSet>(count);
+		sizes = new int[count];
+
+		for (int c = 0; c < count; c++) {
+			int[] rows = new int[(numExamples - c + count - 1) / count];
+			for (int r = 0; r < rows.length; r++) {
+				rows[r] = c + r * count;
+			}
+
+			chunks.add(data.get(rows));
+			sizes[c] = rows.length;
+		}
+
+		chunked = data;
+	}
+}
@@ -0,0 +1,222 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.operators;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.nd4j.linalg.dataset.api.DataSet;
+
+import dataneat.base.BaseNeat;
+import dataneat.fitness.TargetFitnessFunction;
+import dataneat.genome.NeatChromosome;
+import dataneat.phenotype.PreparedInput;
+import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+
+public class FitnessSampler extends BaseNeat {
+	// adaptive subsampling for the fitness operators. Every generation the
+	// whole population is evaluated on the same random subset of the batch,
+	// so rankings stay comparable. The subset is sampleFraction of the batch
+	// while the fitness of the best species champions is spread by
+	// sampleSpread (relative to their mean) or more, and grows to the whole
+	// batch as they close in on one another, which is what late generations
+	// do. Fitness on the subset is scaled up to the batch the way combine
+	// extrapolates the chunks of a batch seen so far, so generations sampled
+	// at different fractions are scored on the same scale. With
+	// sampleWeighting, samples the last champions get wrong are drawn more
+	// often, so fitness then leans towards the hard samples rather than
+	// estimating the fitness on the batch. Every subset is drawn from a
+	// sampling stream of its own (RandGen.nextSample), so the subsets only
+	// depend on the seed and leave the reproduction streams untouched
+
+	private static final long serialVersionUID = 1L;
+	private static final String MAXIMIZE = "maximize";
+	private static final String SAMPLE_FRACTION = "sampleFraction";
+	private static final String SAMPLE_SPREAD = "sampleSpread";
+	private static final String SAMPLE_WEIGHTING = "sampleWeighting";
+	private double minFraction = 1.0, spread = 0.01, fraction = 1.0;
+	private boolean maximize = false, weighting = false;
+	private TargetFitnessFunction fitnessFunction;
+	// species champions of the last generation
+	private List<NeatChromosome> champions = new ArrayList<NeatChromosome>();
+
+	public interface OutputEvaluator {
+		// column major output of each chromosome, in list order
+		public List<double[]> evaluate(List<NeatChromosome> chroms, DataSet data);
+	}
+
+	public FitnessSampler(PropertiesHolder p, TargetFitnessFunction fitnessFunction) {
+		super(p);
+		this.fitnessFunction = fitnessFunction;
+		maximize = Boolean.parseBoolean(getParams().getProperty(MAXIMIZE));
+		minFraction = Double.parseDouble(getParams().getProperty(SAMPLE_FRACTION));
+		spread = Double.parseDouble(getParams().getProperty(SAMPLE_SPREAD));
+		weighting = Integer.parseInt(getParams().getProperty(SAMPLE_WEIGHTING)) == 1;
+		fraction = minFraction;
+	}
+
+	public DataSet sample(DataSet data, OutputEvaluator evaluator) {
+		// the subset this generation is evaluated on, the batch itself once
+		// the fraction has grown to all of it
+		int numExamples = data.numExamples();
+		int size = (int) Math.ceil(fraction * numExamples);
+
+		if (size >= numExamples) {
+			return data;
+		}
+
+		Random random = RandGen.nextSample();
+		double[] weights = weighting && !champions.isEmpty() ? weights(data, evaluator) : null;
+		int[] rows = weights == null ? uniform(numExamples, size, random) : weighted(weights, size, random);
+		Arrays.sort(rows);
+		return data.get(rows);
+	}
+
+	public double toBatch(double fitness, DataSet batch, DataSet sample) {
+		// fitness on sample taken for the whole batch
+		if (sample == batch) {
+			return fitness;
+		}
+
+		int seen = sample.numExamples();
+		return fitnessFunction.combine(new double[] { fitness, 0.0 },
+				new int[] { seen, batch.numExamples() - seen }, 1);
+	}
+
+	public void toBatch(double[] fitness, DataSet batch, DataSet sample) {
+		for (int i = 0; i < fitness.length; i++) {
+			fitness[i] = toBatch(fitness[i], batch, sample);
+		}
+	}
+
+	public void update(List<NeatChromosome> population) {
+		// sets the fraction from the fitness the population just got
+		if (minFraction >= 1.0) {
+			return;
+		}
+
+		Map<Integer, NeatChromosome> best = new HashMap<Integer, NeatChromosome>();
+
+		for (NeatChromosome chrom : population) {
+			best.merge(chrom.getSpecies(), chrom, (a, b) -> better(b, a) ? b : a);
+		}
+
+		champions = new ArrayList<NeatChromosome>(best.values());
+		champions.sort((a, b) -> better(a, b) ? -1 : better(b, a) ? 1 : 0);
+		if (champions.size() < 2) {
+			// nothing to compare, the fraction stays
+			return;
+		}
+
+		// the better half, new species that are far behind say little about
+		// how close the race at the top is
+		List<NeatChromosome> top = champions.subList(0, Math.max(2, champions.size() / 2));
+
+		double mean = 0.0, var = 0.0;
+		for (NeatChromosome chrom : top) {
+			mean += chrom.getFitness();
+		}
+		mean /= top.size();
+		for (NeatChromosome chrom : top) {
+			var += (chrom.getFitness() - mean) * (chrom.getFitness() - mean);
+		}
+
+		// the standard error of a fitness on n samples shrinks as 1 / sqrt(n),
+		// so telling apart champions half as far apart takes four times the
+		// samples
+		double relative = mean == 0.0 ? 0.0 : Math.sqrt(var / (top.size() - 1)) / Math.abs(mean);
+		double needed = relative == 0.0 ? 1.0 : minFraction * (spread / relative) * (spread / relative);
+		fraction = Math.min(1.0, Math.max(minFraction, needed));
+	}
+
+	private boolean better(NeatChromosome a, NeatChromosome b) {
+		return maximize ? a.getFitness() > b.getFitness() : a.getFitness() < b.getFitness();
+	}
+
+	private double[] weights(DataSet data, OutputEvaluator evaluator) {
+		// how wrong the champions get each sample on average, shifted so the
+		// best sample is at zero, plus the mean of that so every sample can
+		// still be drawn
+		List<double[]> outputs = evaluator.evaluate(champions, data);
+		double[] labels = PreparedInput.columnsOf(data.getLabels());
+		double[] wrong = new double[data.numExamples()];
+
+		for (double[] output : outputs) {
+			double[] fitness = fitnessFunction.computeSampleFitness(labels, output, wrong.length);
+			for (int s = 0; s < wrong.length; s++) {
+				wrong[s] += maximize ? -fitness[s] : fitness[s];
+			}
+		}
+
+		double min = Double.MAX_VALUE, mean = 0.0;
+		for (double w : wrong) {
+			min = Math.min(min, w);
+		}
+		for (int s = 0; s < wrong.length; s++) {
+			wrong[s] -= min;
+			mean += wrong[s];
+		}
+		mean /= wrong.length;
+
+		for (int s = 0; s < wrong.length; s++) {
+			wrong[s] = mean > 0.0 ? wrong[s] + mean : 1.0;
+		}
+
+		return wrong;
+	}
+
+	private int[] uniform(int numExamples, int size, Random random) {
+		// partial Fisher-Yates shuffle
+		int[] rows = new int[numExamples];
+		for (int s = 0; s < numExamples; s++) {
+			rows[s] = s;
+		}
+
+		for (int i = 0; i < size; i++) {
+			int j = i + random.nextInt(numExamples - i);
+			int temp = rows[i];
+			rows[i] = rows[j];
+			rows[j] = temp;
+		}
+
+		return Arrays.copyOf(rows, size);
+	}
+
+	private int[] weighted(double[] weights, int size, Random random) {
+		// without replacement, the size samples with the largest u^(1/w)
+		// for u uniform on (0,1), compared through log(u) / w
+		Integer[] order = new Integer[weights.length];
+		double[] keys = new double[weights.length];
+
+		for (int s = 0; s < weights.length; s++) {
+			order[s] = s;
+			keys[s] = Math.log(1.0 - random.nextDouble()) / weights[s];
+		}
+
+		Arrays.sort(order, (a, b) -> Double.compare(keys[b], keys[a]));
+		int[] rows = new int[size];
+		for (int i = 0; i < size; i++) {
+			rows[i] = order[i];
+		}
+
+		return rows;
+	}
+}
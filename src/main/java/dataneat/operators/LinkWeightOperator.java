@@ -20,6 +20,7 @@ import java.util.List;
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
 import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandomStream;
 
 public class LinkWeightOperator extends BaseNeat implements MutationOperator {
 
@@ -36,14 +37,17 @@ public class LinkWeightOperator extends BaseNeat implements MutationOperator {
 	}
 
 	@Override
-	public void operate(List<NeatChromosome> population) {
+	public void operate(List<NeatChromosome> population, RandomStream random) {
 		
 		if (population == null || mutationRate < 0) {
 			return;
 		}
 
-		population.stream().filter(chrom -> chrom.checkEligible(mutationRate))
-				.forEach(chrom -> chrom.mutateLinkWeight(power));
+		Reproduction.forEach(random, population, chrom -> {
+			if (chrom.checkEligible(mutationRate)) {
+				chrom.mutateLinkWeight(power);
+			}
+		});
 	}
 
 }
@@ -18,8 +18,10 @@ package dataneat.operators;
 import java.util.List;
 
 import dataneat.genome.NeatChromosome;
+import dataneat.utils.RandomStream;
 
 public interface MutationOperator {
 
-	public void operate(List<NeatChromosome> population);
+	// chromosome i of population draws from child i of random
+	public void operate(List<NeatChromosome> population, RandomStream random);
 }
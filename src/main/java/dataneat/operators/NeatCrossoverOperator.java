@@ -18,6 +18,7 @@ package dataneat.operators;
 import java.awt.Point;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Random;
 
 import dataneat.base.BaseNeat;
 import dataneat.genome.LinkDB;
@@ -25,7 +26,7 @@ import dataneat.genome.LinkGene;
 import dataneat.genome.NeatChromosome;
 import dataneat.speciation.Species;
 import dataneat.utils.PropertiesHolder;
-import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
 
 public class NeatCrossoverOperator extends BaseNeat {
 
@@ -40,7 +41,7 @@ public class NeatCrossoverOperator extends BaseNeat {
 		enableChance = Double.parseDouble(getParams().getProperty(ENABLE_CHANCE));
 	}
 
-	public List<NeatChromosome> operate(List<NeatChromosome> population, int numOffspring) {
+	public List<NeatChromosome> operate(List<NeatChromosome> population, int numOffspring, Random random) {
 
 		int size = population.size();
 
@@ -54,10 +55,10 @@ public class NeatCrossoverOperator extends BaseNeat {
 		for (int i = 0; i < numOffspring; i++) {
 			int index1 = 0, index2 = 0;
 
-			index1 = RandGen.rand.nextInt(size);
+			index1 = random.nextInt(size);
 
 			do {
-				index2 = RandGen.rand.nextInt(size);
+				index2 = random.nextInt(size);
 			} while (index1 == index2);
 
 			Point crossOverPair = new Point();
@@ -69,27 +70,29 @@ public class NeatCrossoverOperator extends BaseNeat {
 
 		for (Point p : crossOverSelections) {
 
-			offspring.add(doCrossover(p, population));
+			offspring.add(doCrossover(p, population, random));
 		}
 
 		return offspring;
 	}
 	
-	public List<NeatChromosome> operate(Species species, int numOffspring) {
+	public List<NeatChromosome> operate(Species species, int numOffspring, RandomStream random) {
+		// offspring i is bred from child i of random
 
 		List<NeatChromosome> offspring = new ArrayList<NeatChromosome>();		
 
 		for (int i = 0; i < numOffspring; i++) {
 
-			NeatChromosome firstMate = species.generateSelection();
-			NeatChromosome secondMate = species.generateSelection();
-			offspring.add(doCrossover(firstMate, secondMate));
+			RandomStream child = random.split(i);
+			NeatChromosome firstMate = species.generateSelection(child);
+			NeatChromosome secondMate = species.generateSelection(child);
+			offspring.add(doCrossover(firstMate, secondMate, child));
 		}
 
 		return offspring;
 	}
 
-	protected NeatChromosome doCrossover(NeatChromosome firstMate, NeatChromosome secondMate) {
+	protected NeatChromosome doCrossover(NeatChromosome firstMate, NeatChromosome secondMate, Random random) {
 		int FIRSTMATE = 0;
 		int SECONDMATE = 1;
 
@@ -106,7 +109,7 @@ public class NeatCrossoverOperator extends BaseNeat {
 
 			if (firstMate.getGenomeSize() == secondMate.getGenomeSize()) {
 
-				best = RandGen.rand.nextInt(2); // generates random int between
+				best = random.nextInt(2); // generates random int between
 												// 0,1
 			}
 
@@ -149,7 +152,7 @@ public class NeatCrossoverOperator extends BaseNeat {
 
 		// start by making the offspring a copy of the best parent, and then
 		// modify it during crossover
-		NeatChromosome baby = new NeatChromosome(bestMate);
+		NeatChromosome baby = NeatChromosome.offspring(bestMate);
 
 		// Get the link genes, which will be used to execute crossover
 		// ------------------
@@ -179,7 +182,7 @@ public class NeatCrossoverOperator extends BaseNeat {
 
 				if (isDisabled) {
 
-					if (RandGen.rand.nextDouble() < enableChance) {
+					if (random.nextDouble() < enableChance) {
 
 						babyLinks.getByIndex(bestLinksIndex).setEnabled(true);
 					}
@@ -208,7 +211,7 @@ public class NeatCrossoverOperator extends BaseNeat {
 					// multiple nodes splitting the same link
 					boolean isSplit = bestLinks.getByIndex(bestLinksIndex).isAlreadySplit();
 
-					if (RandGen.rand.nextDouble() > 0.5) {
+					if (random.nextDouble() > 0.5) {
 
 						// if this executes, then replace the baby's link with
 						// the
@@ -223,7 +226,7 @@ public class NeatCrossoverOperator extends BaseNeat {
 
 					if (isDisabled) {
 
-						if (RandGen.rand.nextDouble() < enableChance) {
+						if (random.nextDouble() < enableChance) {
 
 							babyLinks.getByIndex(bestLinksIndex).setEnabled(true);
 						} else {
@@ -275,7 +278,7 @@ public class NeatCrossoverOperator extends BaseNeat {
 
 					if (isDisabled) {
 
-						if (RandGen.rand.nextDouble() < enableChance) {
+						if (random.nextDouble() < enableChance) {
 
 							babyLinks.getByIndex(bestLinksIndex).setEnabled(true);
 						}
@@ -291,13 +294,13 @@ public class NeatCrossoverOperator extends BaseNeat {
 		return baby;
 	}
 
-	protected NeatChromosome doCrossover(Point pair, List<NeatChromosome> eligiblePop) {
+	protected NeatChromosome doCrossover(Point pair, List<NeatChromosome> eligiblePop, Random random) {
 
 		// use the points to get the 2 chroms
 		NeatChromosome firstMate = eligiblePop.get(pair.x);
 		NeatChromosome secondMate = eligiblePop.get(pair.y);
 
-		return doCrossover(firstMate, secondMate);
+		return doCrossover(firstMate, secondMate, random);
 	}
 
 	private boolean checkGeneDisabled(LinkGene bestGene) {
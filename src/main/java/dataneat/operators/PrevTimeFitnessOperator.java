@@ -15,6 +15,7 @@
  *******************************************************************************/
 package dataneat.operators;
 
+import java.util.Arrays;
 import java.util.List;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
@@ -23,21 +24,30 @@ import org.nd4j.linalg.dataset.api.DataSet;
 import dataneat.base.BaseNeat;
 import dataneat.fitness.TargetFitnessFunction;
 import dataneat.genome.NeatChromosome;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.Phenotypes;
+import dataneat.phenotype.PopulationEvaluator;
+import dataneat.phenotype.PreparedInput;
+import dataneat.utils.EvaluationExecutor;
 import dataneat.utils.PropertiesHolder;
 
 public class PrevTimeFitnessOperator extends BaseNeat implements TargetFitnessOperator{
 
 	private static final String FITNESS_FUNCTION = "fitnessFunction";
 	private static final String MAXIMIZE = "maximize";		
-	private boolean maximize = true;		
+	private static final String FLOAT_EVAL = "floatEval";
+	private boolean maximize = true, floatEval = false;
 	private TargetFitnessFunction fitnessFunction;
+	private FitnessRace race;
+	private FitnessCache cache;
+	private FitnessSampler sampler;
+	private PopulationEvaluator evaluator;
 	private INDArray stabil;
 
 	public PrevTimeFitnessOperator(PropertiesHolder p, INDArray stabilMatrix) {
 		super(p);
 		stabil = stabilMatrix;
 		maximize = Boolean.parseBoolean(getParams().getProperty(MAXIMIZE));		
+		floatEval = Integer.parseInt(getParams().getProperty(FLOAT_EVAL)) == 1;
 
 		try {
 			fitnessFunction = (TargetFitnessFunction) Class.forName(getParams().getProperty(FITNESS_FUNCTION))
@@ -47,10 +57,19 @@ public class PrevTimeFitnessOperator extends BaseNeat implements TargetFitnessOp
 			e.printStackTrace();
 		}
 
+		race = new FitnessRace(p, fitnessFunction, maximize);
+		cache = new FitnessCache(p);
+		sampler = new FitnessSampler(p, fitnessFunction);
+		evaluator = new PopulationEvaluator(p);
+
 	}
 
 	
-	public void operate(List<NeatChromosome> population, DataSet data) {
+	public void operate(List<NeatChromosome> population, DataSet batch) {
+		operate(population, batch, null, null);
+	}
+
+	public void operate(List<NeatChromosome> population, DataSet batch, DataSet test, TestFitnessOperator tester) {
 
 		if (population == null) {
 			// Population list empty:
@@ -59,8 +78,54 @@ public class PrevTimeFitnessOperator extends BaseNeat implements TargetFitnessOp
 			return;
 		}
 
-		// do the fitness evaluations on each chromosome
-		population.parallelStream().forEach(chrom -> evaluate(chrom, data));
+		// every network is laid out once, for the batch and the test set
+		Phenotypes phenotypes = new Phenotypes(population);
+
+		// the whole population is evaluated on the same subset of the batch
+		DataSet data = sampler.sample(batch, (chroms, sample) -> {
+			PreparedInput sampleInput = PreparedInput.of(sample);
+			double[][] outputs = new double[chroms.size()][];
+			EvaluationExecutor.getEvaluationExecutor().forEach(chroms.size(), i -> chroms.get(i).getGenomeSize(),
+					i -> outputs[i] = output(chroms.get(i), sample, sampleInput, phenotypes, floatEval));
+			return Arrays.asList(outputs);
+		});
+
+		// column major features and labels shared by all the networks
+		PreparedInput input = PreparedInput.of(data);
+
+		// chromosomes identical to one another or to an already evaluated one
+		// are only evaluated once
+		List<NeatChromosome> distinct = cache.begin(population, input);
+		double[] fitness;
+		boolean[] exact = null;
+
+		if (race.isEnabled()) {
+			// chunk by chunk for the chromosomes still racing
+			fitness = race.run(distinct, data, (chroms, chunk) -> {
+				return evaluate(chroms, chunk, PreparedInput.of(chunk), phenotypes);
+			});
+			exact = race.getFinished();
+		} else {
+			// do the fitness evaluations on each chromosome
+			fitness = evaluate(distinct, data, input, phenotypes);
+		}
+
+		sampler.toBatch(fitness, batch, data);
+		cache.finish(fitness, exact, NeatChromosome::setFitness);
+
+		if (floatEval && !population.isEmpty()) {
+			// the champion is reported, so it is scored again in double
+			NeatChromosome best = population.get(0);
+			for (NeatChromosome chrom : population) {
+				if (maximize ? chrom.getFitness() > best.getFitness() : chrom.getFitness() < best.getFitness()) {
+					best = chrom;
+				}
+			}
+			cache.update(best, sampler.toBatch(evaluate(best, data, input, phenotypes, false), batch, data),
+					NeatChromosome::setFitness);
+		}
+
+		sampler.update(population);
 
 		// we need the worst fitness in the population, this depends on if
 		// fitness is maximized or minimized
@@ -91,19 +156,31 @@ public class PrevTimeFitnessOperator extends BaseNeat implements TargetFitnessOp
 		for (NeatChromosome chrom : population) {
 			chrom.setAdjustedFitness(Math.abs(worstFitness - chrom.getFitness()));
 		}
+
+		if (tester != null) {
+			tester.operate(population, test, phenotypes);
+		}
 	}
 
-	private void evaluate(NeatChromosome chrom, DataSet data) {
-		// this function evaluates a single chromosome
+	private double[] evaluate(List<NeatChromosome> chroms, DataSet data, PreparedInput input, Phenotypes phenotypes) {
+		// the larger genomes are handed out first
+		double[] fitness = new double[chroms.size()];
+		EvaluationExecutor.getEvaluationExecutor().forEach(chroms.size(), i -> chroms.get(i).getGenomeSize(),
+				i -> fitness[i] = evaluate(chroms.get(i), data, input, phenotypes, floatEval));
+		return fitness;
+	}
 
-		// create phenotype
-		Network net = new Network(chrom, getHolder(),stabil);		
+	private double evaluate(NeatChromosome chrom, DataSet data, PreparedInput input, Phenotypes phenotypes,
+			boolean single) {
+		// this function evaluates a single chromosome
+		return fitnessFunction.computeFitness(input.getLabelColumns(), output(chrom, data, input, phenotypes, single),
+				data.numExamples());
+	}
 
-		// compute on entire training set
-		net.computeNetPrevTimestep(data.getFeatures());
-				
-		// set fitness
-		double fitness = fitnessFunction.computeFitness(data.getLabels(), net.getOutput());
-		chrom.setFitness(fitness);
+	private double[] output(NeatChromosome chrom, DataSet data, PreparedInput input, Phenotypes phenotypes,
+			boolean single) {
+		// compute on the entire training set
+		return evaluator.computePrevTimestepColumns(phenotypes.getPlan(chrom), phenotypes.getWeights(chrom), input,
+				single);
 	}	
 }
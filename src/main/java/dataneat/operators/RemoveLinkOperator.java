@@ -20,6 +20,7 @@ import java.util.List;
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
 import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandomStream;
 
 public class RemoveLinkOperator extends BaseNeat implements MutationOperator {
 
@@ -31,7 +32,7 @@ public class RemoveLinkOperator extends BaseNeat implements MutationOperator {
 		mutationRate = Double.parseDouble(getParams().getProperty(REMOVE_LINK_RATE));				
 	}
 
-	public void operate(List<NeatChromosome> population) {
+	public void operate(List<NeatChromosome> population, RandomStream random) {
 
 		if (population == null) {
 			// Population list empty:
@@ -46,8 +47,11 @@ public class RemoveLinkOperator extends BaseNeat implements MutationOperator {
 			return;
 		}
 
-		population.stream().filter(t -> t.checkEligible(mutationRate))
-				.forEach(t -> t.removeLinkRandom());
+		Reproduction.forEach(random, population, t -> {
+			if (t.checkEligible(mutationRate)) {
+				t.removeLinkRandom();
+			}
+		});
 	}
 
 	public double getMutationRate() {
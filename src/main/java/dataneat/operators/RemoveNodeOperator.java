@@ -20,6 +20,7 @@ import java.util.List;
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
 import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandomStream;
 
 public class RemoveNodeOperator extends BaseNeat implements MutationOperator {
 
@@ -34,7 +35,7 @@ public class RemoveNodeOperator extends BaseNeat implements MutationOperator {
 		removeNodeAttempts = Integer.parseInt(getParams().getProperty(REMOVE_NODE_ATTEMPTS));		
 	}
 
-	public void operate(List<NeatChromosome> population) {
+	public void operate(List<NeatChromosome> population, RandomStream random) {
 
 		if (population == null) {
 			// Population list empty:
@@ -49,8 +50,11 @@ public class RemoveNodeOperator extends BaseNeat implements MutationOperator {
 			return;
 		}
 
-		population.stream().filter(t -> t.checkEligible(mutationRate))
-				.forEach(t -> t.removeNodeRandom(removeNodeAttempts));
+		Reproduction.forEach(random, population, t -> {
+			if (t.checkEligible(mutationRate)) {
+				t.removeNodeRandom(removeNodeAttempts);
+			}
+		});
 	}
 
 	public double getMutationRate() {
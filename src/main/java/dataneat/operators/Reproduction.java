@@ -0,0 +1,62 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.operators;
+
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ObjIntConsumer;
+
+import dataneat.genome.NeatChromosome;
+import dataneat.innovation.InnovationDatabase;
+import dataneat.innovation.InnovationDatabase.Staging;
+import dataneat.utils.EvaluationExecutor;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
+
+public class Reproduction {
+	// runs the tasks of a reproduction phase, crossover of a species or the
+	// mutation of a chromosome, on the evaluation threads with the same
+	// result as running them one after the other. Task i draws from child i
+	// of the stream the phase is handed, and the links it creates are staged
+	// and committed in task order, so neither the randoms nor the innovation
+	// ids depend on which thread ran what. Tasks must not touch each other's
+	// chromosomes
+
+	private Reproduction() {}
+
+	public static void forEach(RandomStream random, int count, IntToDoubleFunction cost,
+			ObjIntConsumer<RandomStream> task) {
+		// task is handed its stream, which is also what RandGen.current()
+		// returns while it runs
+		InnovationDatabase db = InnovationDatabase.getInnovationDatabase();
+		Staging[] stagings = new Staging[count];
+
+		EvaluationExecutor.getEvaluationExecutor().forEach(count, cost, i -> {
+			RandomStream stream = random.split(i);
+			stagings[i] = db.stage(() -> RandGen.run(stream, () -> task.accept(stream, i)));
+		});
+
+		for (Staging s : stagings) {
+			db.commit(s);
+		}
+	}
+
+	public static void forEach(RandomStream random, List<NeatChromosome> chroms, Consumer<NeatChromosome> task) {
+		// one task per chromosome
+		forEach(random, chroms.size(), i -> chroms.get(i).getGenomeSize(), (stream, i) -> task.accept(chroms.get(i)));
+	}
+}
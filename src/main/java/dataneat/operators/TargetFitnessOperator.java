@@ -24,4 +24,13 @@ import dataneat.genome.NeatChromosome;
 public interface TargetFitnessOperator {
 
 	public void operate(List<NeatChromosome> population, DataSet data);
+
+	// the same, scoring the test set with tester in the same pass, so every
+	// network is laid out once for both. By default they are simply scored
+	// one after the other
+	public default void operate(List<NeatChromosome> population, DataSet data, DataSet test,
+			TestFitnessOperator tester) {
+		operate(population, data);
+		tester.operate(population, test);
+	}
 }
@@ -15,34 +15,51 @@
  *******************************************************************************/
 package dataneat.operators;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
-import org.nd4j.linalg.api.ndarray.INDArray;
+import java.util.Map;
+import java.util.Set;
+
 import org.nd4j.linalg.dataset.api.DataSet;
-import org.nd4j.linalg.factory.Nd4j;
 
 import dataneat.base.BaseNeat;
 import dataneat.fitness.TargetFitnessFunction;
 import dataneat.genome.NeatChromosome;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.Phenotypes;
+import dataneat.phenotype.PopulationEvaluator;
+import dataneat.phenotype.PreparedInput;
+import dataneat.utils.EvaluationExecutor;
 import dataneat.utils.PropertiesHolder;
 
 public class TestFitnessOperator extends BaseNeat implements TargetFitnessOperator {
 	// almost identical to the fitness operator, but this class instead deals
-	// with the test dataset
+	// with the test dataset. It can be restricted to the best chromosomes by
+	// training fitness and the species champions, see testTopK
 
 	private static final String FITNESS_FUNCTION = "fitnessFunction";
-	private static final String STABIL_THRESH = "stabilizationDelta";
-	private static final String BATCH_SIZE = "batchSize";
+	private static final String MAXIMIZE = "maximize";
+	private static final String FLOAT_EVAL = "floatEval";
+	private static final String TEST_TOP_K = "testTopK";
+	private static final String TEST_SPECIES_CHAMPIONS = "testSpeciesChampions";
 	
 	private TargetFitnessFunction fitnessFunction;
-	private INDArray stabil;
-	private double stabilDelta = 0.01;	
-	private Integer batchSize = 50;
+	private boolean maximize = true, floatEval = false, speciesChampions = false;
+	private int topK = 0;
+	private FitnessCache cache;
+	private PopulationEvaluator evaluator;
 
 	public TestFitnessOperator(PropertiesHolder p) {
 		super(p);
-		stabilDelta = Double.parseDouble(getParams().getProperty(STABIL_THRESH));		
-		batchSize = Integer.parseInt(getParams().getProperty(BATCH_SIZE));		
+		maximize = Boolean.parseBoolean(getParams().getProperty(MAXIMIZE));
+		floatEval = Integer.parseInt(getParams().getProperty(FLOAT_EVAL)) == 1;
+		topK = Integer.parseInt(getParams().getProperty(TEST_TOP_K));
+		speciesChampions = Integer.parseInt(getParams().getProperty(TEST_SPECIES_CHAMPIONS)) == 1;
+		cache = new FitnessCache(p);
+		evaluator = new PopulationEvaluator(p);
 
 		try {
 			fitnessFunction = (TargetFitnessFunction) Class.forName(getParams().getProperty(FITNESS_FUNCTION))
@@ -55,6 +72,11 @@ public class TestFitnessOperator extends BaseNeat implements TargetFitnessOperat
 	}
 
 	public void operate(List<NeatChromosome> population, DataSet data) {
+		operate(population, data, null);
+	}
+
+	// with the networks already laid out for the training batch
+	public void operate(List<NeatChromosome> population, DataSet data, Phenotypes phenotypes) {
 
 		if (population == null) {
 			// Population list empty:
@@ -62,25 +84,93 @@ public class TestFitnessOperator extends BaseNeat implements TargetFitnessOperat
 			// -----------------------------------------------
 			return;
 		}
-		
-		stabil= Nd4j.zeros(data.numExamples(), 1);
-		stabil.addi(stabilDelta);
-		batchSize = data.numExamples();
-		getParams().setProperty(BATCH_SIZE, this.batchSize.toString());
 
-		population.parallelStream().forEach(chrom -> evaluate(chrom, data));
+		// only the candidates are scored, the others get the worst test
+		// fitness there is so they can not become the test champion
+		List<NeatChromosome> candidates = candidates(population);
+		if (candidates.size() < population.size()) {
+			Set<NeatChromosome> scored = Collections.newSetFromMap(new IdentityHashMap<NeatChromosome, Boolean>());
+			scored.addAll(candidates);
+
+			for (NeatChromosome chrom : population) {
+				if (!scored.contains(chrom)) {
+					chrom.setTestFitness(maximize ? -Double.MAX_VALUE : Double.MAX_VALUE);
+				}
+			}
+		}
+
+		Phenotypes networks = phenotypes != null ? phenotypes : new Phenotypes(candidates);
+
+		// column major features and labels shared by all the networks
+		PreparedInput input = PreparedInput.of(data);
+
+		// chromosomes identical to one another or to one evaluated last time
+		// are only evaluated once
+		List<NeatChromosome> distinct = cache.begin(candidates, input);
+		double[] fitness = new double[distinct.size()];
+		EvaluationExecutor.getEvaluationExecutor().forEach(distinct.size(), i -> distinct.get(i).getGenomeSize(),
+				i -> fitness[i] = evaluate(distinct.get(i), data, input, networks, floatEval));
+		cache.finish(fitness, null, NeatChromosome::setTestFitness);
+
+		if (floatEval && !candidates.isEmpty()) {
+			// the test champion is reported, so it is scored again in double
+			NeatChromosome best = candidates.get(0);
+			for (NeatChromosome chrom : candidates) {
+				if (maximize ? chrom.getTestFitness() > best.getTestFitness()
+						: chrom.getTestFitness() < best.getTestFitness()) {
+					best = chrom;
+				}
+			}
+			cache.update(best, evaluate(best, data, input, networks, false), NeatChromosome::setTestFitness);
+		}
 	}
 
-	private void evaluate(NeatChromosome chrom, DataSet data) {
-		// this function evaluates a single chromosome
+	private List<NeatChromosome> candidates(List<NeatChromosome> population) {
+		// the topK best chromosomes by training fitness and the best one of
+		// every species, in population order, or everyone when neither is
+		// asked for. Only the test champion is ever read
+		if (topK <= 0 && !speciesChampions) {
+			return population;
+		}
+
+		Comparator<NeatChromosome> best = Comparator.comparingDouble(NeatChromosome::getFitness);
+		if (maximize) {
+			best = best.reversed();
+		}
+
+		Set<NeatChromosome> chosen = Collections.newSetFromMap(new IdentityHashMap<NeatChromosome, Boolean>());
+
+		if (topK > 0) {
+			List<NeatChromosome> sorted = new ArrayList<NeatChromosome>(population);
+			sorted.sort(best);
+			chosen.addAll(sorted.subList(0, Math.min(topK, sorted.size())));
+		}
+
+		if (speciesChampions) {
+			Map<Integer, NeatChromosome> champions = new HashMap<Integer, NeatChromosome>();
+			Comparator<NeatChromosome> order = best;
 
-		// create phenotype
-		Network net = new Network(chrom, getHolder(), stabil);
+			for (NeatChromosome chrom : population) {
+				champions.merge(chrom.getSpecies(), chrom, (a, b) -> order.compare(b, a) < 0 ? b : a);
+			}
+			chosen.addAll(champions.values());
+		}
+
+		List<NeatChromosome> candidates = new ArrayList<NeatChromosome>(chosen.size());
+		for (NeatChromosome chrom : population) {
+			if (chosen.contains(chrom)) {
+				candidates.add(chrom);
+			}
+		}
+
+		return candidates;
+	}
 
-		// compute on entire training set
-		net.computeNetPrevTimestep(data.getFeatures());
-		// set fitness
-		double testFitness = fitnessFunction.computeFitness(data.getLabels(), net.getOutput());
-		chrom.setTestFitness(testFitness);
+	private double evaluate(NeatChromosome chrom, DataSet data, PreparedInput input, Phenotypes phenotypes,
+			boolean single) {
+		// this function evaluates a single chromosome on the entire test set
+		double[] output = evaluator.computePrevTimestepColumns(phenotypes.getPlan(chrom), phenotypes.getWeights(chrom),
+				input, single);
+		return fitnessFunction.computeFitness(input.getLabelColumns(), output, data.numExamples());
 	}
 }
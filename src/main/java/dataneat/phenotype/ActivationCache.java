@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dataneat.genome.NeatChromosome;
+
+public class ActivationCache {
+	// activations of recently evaluated chromosomes, so their offspring and
+	// the siblings of an unchanged copy (elites, clones) can be evaluated
+	// incrementally on the same inputs. Entries are only used for the exact
+	// inputs they were computed on. The cache is least recently used first,
+	// bounded by the total number of activation values it holds, and a
+	// capacity of zero, the default, turns incremental evaluation off
+
+	private long capacity = 0;
+	private long used = 0;
+	private Map<NeatChromosome, Activations> entries = new LinkedHashMap<NeatChromosome, Activations>(16, 0.75f, true);
+	// the inputs last handed to share
+	private PreparedInput shared;
+	private AtomicLong derived = new AtomicLong();
+
+	private ActivationCache() {}
+
+	private static class ActivationCacheHolder {
+		private static final ActivationCache INSTANCE = new ActivationCache();
+	}
+
+	public static ActivationCache getActivationCache() {
+		return ActivationCacheHolder.INSTANCE;
+	}
+
+	public synchronized Activations get(NeatChromosome chrom, PreparedInput input) {
+		// null when there is no entry for these inputs
+		if (chrom == null) {
+			return null;
+		}
+
+		Activations a = entries.get(chrom);
+		return a != null && a.getInput() == input ? a : null;
+	}
+
+	public synchronized PreparedInput share(PreparedInput input) {
+		// the inputs the entries should be looked up with: the last ones
+		// shared when they hold the same features, so a batch prepared again
+		// for a new generation still finds the activations of the last one,
+		// and input otherwise
+		if (shared == null || !shared.sameContent(input)) {
+			shared = input;
+		}
+
+		return shared;
+	}
+
+	public synchronized void put(NeatChromosome chrom, Activations a) {
+		long weight = a.getValues().length;
+
+		if (weight > capacity) {
+			return;
+		}
+
+		Activations old = entries.put(chrom, a);
+		if (old != null) {
+			used -= old.getValues().length;
+		}
+		used += weight;
+		evict();
+	}
+
+	private void evict() {
+		Iterator<Activations> it = entries.values().iterator();
+
+		while (used > capacity && it.hasNext()) {
+			used -= it.next().getValues().length;
+			it.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+		used = 0;
+		shared = null;
+	}
+
+	public void countDerived() {
+		derived.incrementAndGet();
+	}
+
+	public long getDerived() {
+		// networks evaluated from cached activations since the last reset
+		return derived.get();
+	}
+
+	public void resetCounters() {
+		derived.set(0);
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	public synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		evict();
+	}
+}
@@ -0,0 +1,89 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+public class Activations {
+	// the outputs of every computed neuron of one network on the current
+	// timestep for one set of inputs. A close relative evaluated on the same
+	// inputs (a child after a weight mutation or a new link) only has to
+	// recompute the neurons its changes reach, and takes the rest from here
+
+	private final NetworkPlan plan;
+	private final double[] weights;
+	private final PreparedInput input;
+	// computed neuron k of sample s at k * batchSize + s
+	private final double[] values;
+
+	public Activations(NetworkPlan plan, double[] weights, PreparedInput input, double[] values) {
+		this.plan = plan;
+		this.weights = weights;
+		this.input = input;
+		this.values = values;
+	}
+
+	public boolean[] changedNeurons(NetworkPlan other, double[] otherWeights) {
+		// computed neurons whose output differs for the other network, in
+		// evaluation order a neuron changes when its own links or weights do
+		// or when one of its sources changed. Null when the neurons are not
+		// the same, or when the changed neurons hold half of the links or
+		// more and a full evaluation costs about the same
+		if (!plan.hasSameNeurons(other)) {
+			return null;
+		}
+
+		int first = plan.getFirstComputed();
+		int[] linkStart = plan.getLinkStart(), forwardEnd = plan.getForwardEnd(), linkSource = plan.getLinkSource();
+		int[] otherStart = other.getLinkStart(), otherEnd = other.getForwardEnd(), otherSource = other.getLinkSource();
+		boolean[] changed = new boolean[plan.getNumComputed()];
+		int changedLinks = 0, totalLinks = 0;
+
+		for (int k = 0; k < changed.length; k++) {
+			// links from neurons evaluated later read zero on the current
+			// timestep, so only the forward ones matter
+			int length = otherEnd[k] - otherStart[k];
+			changed[k] = length != forwardEnd[k] - linkStart[k];
+
+			for (int j = 0; !changed[k] && j < length; j++) {
+				int a = linkStart[k] + j, b = otherStart[k] + j;
+				changed[k] = linkSource[a] != otherSource[b] || weights[a] != otherWeights[b]
+						|| (otherSource[b] >= first && changed[otherSource[b] - first]);
+			}
+
+			totalLinks += length;
+			if (changed[k]) {
+				changedLinks += length;
+			}
+		}
+
+		return changedLinks * 2 < totalLinks ? changed : null;
+	}
+
+	public NetworkPlan getPlan() {
+		return plan;
+	}
+
+	public double[] getWeights() {
+		return weights;
+	}
+
+	public PreparedInput getInput() {
+		return input;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+}
@@ -16,11 +16,11 @@
 package dataneat.phenotype;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
 
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeuronGene;
 import dataneat.genome.NeuronType;
+import dataneat.utils.BufferPool;
 import dataneat.utils.PropertiesHolder;
 
 public abstract class BaseNeuron extends BaseNeat {		
@@ -51,10 +51,11 @@ public abstract class BaseNeuron extends BaseNeat {
 	}
 	
 	private void init() {
-		output = Nd4j.zeros(batchSize, 1);
-		input = Nd4j.zeros(batchSize, 1);
+		// shared zero column, the neuron replaces these instead of writing to them
+		output = BufferPool.zeros(batchSize);
+		input = output;
 		prevOutput = output;
-		delta = Nd4j.zeros(batchSize, 1);
+		delta = output;
 	}
 	
 	public void step() {
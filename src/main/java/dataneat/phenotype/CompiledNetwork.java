@@ -0,0 +1,417 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Arrays;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.INDArrayIndex;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import dataneat.base.BaseNeat;
+import dataneat.genome.NeatChromosome;
+import dataneat.transferFunction.IdentityFunction;
+import dataneat.transferFunction.TransferFunction;
+import dataneat.transferFunction.TransferFunctions;
+import dataneat.utils.BufferPool;
+import dataneat.utils.PropertiesHolder;
+
+public class CompiledNetwork extends BaseNeat {
+	// feed forward phenotype built from a NetworkPlan. Gives the same outputs
+	// as Network.computeNetCurrentTimestep, but the neuron order, the incoming
+	// link lists and the weight columns are worked out once when the network
+	// is built instead of on every evaluation.
+	// In layered mode the computed neurons are grouped by topological depth and
+	// each layer is evaluated with a single matrix multiply over the union of
+	// its sources, so the number of native calls grows with the depth of the
+	// network instead of its size
+
+	private static final long serialVersionUID = 1L;
+	private static final String LAYERED_EVAL = "layeredEval";
+	private NetworkPlan plan;
+	private double[] weights;
+	private boolean layered = false;
+	// when set, links coming from the inputs and the bias are left out and
+	// their summed contribution is handed in by the caller instead (see
+	// PopulationEvaluator)
+	private boolean externalInputs = false;
+	private int[][] sources;
+	// index into weights of the first entry of sources[k]
+	private int[] sourceStart;
+	private INDArray[] weightColumns;
+	private TransferFunction[] transferFunctions;
+
+	// maps a plan index to its state column. The identity unless layered, in
+	// which case the computed neurons are reordered so that every layer takes
+	// up the state columns layerStart[l] up to layerStart[l + 1]
+	private int[] columns;
+	private int[] outputColumns;
+	private int[] layerStart;
+	private int[][] layerSources;
+	// shape = (numLayerSources, layerSize)
+	private INDArray[] layerWeights;
+	// null when the neurons of a layer use different transfer functions
+	private TransferFunction[] layerFunctions;
+
+	// copied out of the state at the end of every evaluation
+	private INDArray output;
+	// when recording, the outputs of the computed neurons in plan order,
+	// computed neuron k of sample s at k * batchSize + s
+	private boolean recording = false;
+	private double[] values;
+
+	public CompiledNetwork() {}
+
+	public CompiledNetwork(NeatChromosome chrom, PropertiesHolder p) {
+		this(PlanCache.getPlanCache().getPlan(chrom), chrom, p);
+	}
+
+	public CompiledNetwork(NetworkPlan plan, NeatChromosome chrom, PropertiesHolder p) {
+		this(plan, plan.extractWeights(chrom), false, p);
+	}
+
+	public CompiledNetwork(NetworkPlan plan, double[] weights, boolean externalInputs, PropertiesHolder p) {
+		super(p);
+		this.plan = plan;
+		this.externalInputs = externalInputs;
+		layered = Integer.parseInt(getParams().getProperty(LAYERED_EVAL)) == 1;
+		initTransferFunctions();
+		initColumns();
+		setWeights(weights);
+	}
+
+	private void initTransferFunctions() {
+		int first = plan.getFirstComputed();
+		transferFunctions = new TransferFunction[plan.getNumComputed()];
+		TransferFunction sigmoid = TransferFunctions.sigmoid(getHolder());
+
+		for (int k = 0; k < transferFunctions.length; k++) {
+			switch (plan.getType(first + k)) {
+			case HIDDEN:
+			case OUTPUT:
+				transferFunctions[k] = sigmoid;
+				break;
+			default:
+				transferFunctions[k] = new IdentityFunction();
+				break;
+			}
+		}
+	}
+
+	private void initColumns() {
+		int first = plan.getFirstComputed();
+		int numLayers = layered ? plan.getNumLayers() : 0;
+		columns = new int[plan.size()];
+		layerStart = new int[numLayers + 1];
+		layerStart[0] = first;
+
+		for (int i = 0; i < columns.length; i++) {
+			columns[i] = i;
+		}
+
+		if (layered) {
+			int[] depths = plan.getDepths();
+			int[] counts = new int[numLayers];
+
+			for (int k = 0; k < depths.length; k++) {
+				counts[depths[k] - 1]++;
+			}
+
+			for (int l = 0; l < numLayers; l++) {
+				layerStart[l + 1] = layerStart[l] + counts[l];
+			}
+
+			// stable, so neurons keep their evaluation order within a layer
+			int[] fill = Arrays.copyOf(layerStart, numLayers);
+			for (int k = 0; k < depths.length; k++) {
+				columns[first + k] = fill[depths[k] - 1]++;
+			}
+
+			initLayerFunctions();
+		}
+
+		int[] outputIndices = plan.getOutputIndices();
+		outputColumns = new int[outputIndices.length];
+
+		for (int i = 0; i < outputIndices.length; i++) {
+			outputColumns[i] = columns[outputIndices[i]];
+		}
+	}
+
+	private void initLayerFunctions() {
+		int[] depths = plan.getDepths();
+		layerFunctions = new TransferFunction[plan.getNumLayers()];
+		boolean[] mixed = new boolean[layerFunctions.length];
+
+		for (int k = 0; k < depths.length; k++) {
+			int l = depths[k] - 1;
+
+			if (layerFunctions[l] == null) {
+				layerFunctions[l] = transferFunctions[k];
+			} else if (layerFunctions[l].getClass() != transferFunctions[k].getClass()) {
+				mixed[l] = true;
+			}
+		}
+
+		for (int l = 0; l < layerFunctions.length; l++) {
+			if (mixed[l]) {
+				layerFunctions[l] = null;
+			}
+		}
+	}
+
+	public void setWeights(double[] weights) {
+		// links from neurons evaluated later in the pass (and loopbacks) only
+		// ever see the zeroed state during a single pass, so they are dropped
+		this.weights = weights;
+		int[] linkStart = plan.getLinkStart();
+		int[] forwardEnd = plan.getForwardEnd();
+		int[] linkSource = plan.getLinkSource();
+		int first = plan.getFirstComputed();
+
+		sources = new int[plan.getNumComputed()][];
+		sourceStart = new int[plan.getNumComputed()];
+		weightColumns = new INDArray[plan.getNumComputed()];
+
+		for (int k = 0; k < sources.length; k++) {
+			int from = linkStart[k], to = forwardEnd[k];
+
+			// sources are sorted, so inputs and bias come first
+			while (externalInputs && from < to && linkSource[from] < first) {
+				from++;
+			}
+
+			sourceStart[k] = from;
+
+			if (to > from) {
+				sources[k] = Arrays.copyOfRange(linkSource, from, to);
+				// shape (numInputsToNeuron, 1)
+				weightColumns[k] = Nd4j.create(Arrays.copyOfRange(weights, from, to), new int[] { to - from, 1 });
+			}
+		}
+
+		if (layered) {
+			buildLayerWeights();
+		}
+	}
+
+	private void buildLayerWeights() {
+		// one dense (numLayerSources, layerSize) matrix per layer, where the
+		// rows are the union of the state columns feeding any neuron of it
+		int first = plan.getFirstComputed();
+		int numLayers = plan.getNumLayers();
+		int[] depths = plan.getDepths();
+		int[] row = new int[plan.size()];
+
+		layerSources = new int[numLayers][];
+		layerWeights = new INDArray[numLayers];
+
+		for (int l = 0; l < numLayers; l++) {
+			boolean[] used = new boolean[plan.size()];
+			int numSources = 0;
+
+			for (int k = 0; k < sources.length; k++) {
+				if (depths[k] == l + 1 && sources[k] != null) {
+					for (int s : sources[k]) {
+						if (!used[columns[s]]) {
+							used[columns[s]] = true;
+							numSources++;
+						}
+					}
+				}
+			}
+
+			if (numSources == 0) {
+				continue;
+			}
+
+			layerSources[l] = new int[numSources];
+			int next = 0;
+
+			for (int c = 0; c < used.length; c++) {
+				if (used[c]) {
+					row[c] = next;
+					layerSources[l][next++] = c;
+				}
+			}
+
+			int layerSize = layerStart[l + 1] - layerStart[l];
+			// row major, shape (numSources, layerSize)
+			double[] w = new double[numSources * layerSize];
+
+			for (int k = 0; k < sources.length; k++) {
+				if (depths[k] == l + 1 && sources[k] != null) {
+					int column = columns[first + k] - layerStart[l];
+
+					for (int j = 0; j < sources[k].length; j++) {
+						w[row[columns[sources[k][j]]] * layerSize + column] = weights[sourceStart[k] + j];
+					}
+				}
+			}
+
+			layerWeights[l] = Nd4j.create(w, new int[] { numSources, layerSize }, 'c');
+		}
+	}
+
+	// shape = (batchSize,numInputs)
+	public void computeNetCurrentTimestep(INDArray inputs) {
+		computeNetCurrentTimestep(inputs, null);
+	}
+
+	// inputSums holds the summed input and bias contributions of every
+	// computed neuron, shape = (batchSize,numComputed) in state column order.
+	// Required when the network was built with externalInputs, null otherwise
+	public void computeNetCurrentTimestep(INDArray inputs, INDArray inputSums) {
+		int batchSize = inputs.rows();
+
+		// shape = (batchSize, plan.size()), one column per neuron. Borrowed
+		// from the thread's BufferPool, its contents are left over from the
+		// last network, but every column is written before it is read
+		INDArray state = BufferPool.getBufferPool().matrix(BufferPool.STATE, batchSize, plan.size());
+
+		// with external inputs nothing reads the input and bias columns
+		if (!externalInputs) {
+			state.put(new INDArrayIndex[] { NDArrayIndex.all(), NDArrayIndex.interval(0, plan.getNumInputs()) },
+					inputs);
+
+			if (plan.getBiasIndex() >= 0) {
+				state.putColumn(plan.getBiasIndex(), BufferPool.ones(batchSize));
+			}
+		}
+
+		if (layered) {
+			computeLayers(state, batchSize, inputSums);
+		} else {
+			computeNeurons(state, batchSize, inputSums);
+		}
+
+		output = state.getColumns(outputColumns);
+
+		if (recording) {
+			recordValues(state, batchSize);
+		}
+	}
+
+	private void recordValues(INDArray state, int batchSize) {
+		// one copy of the computed columns, then back into plan order
+		int first = plan.getFirstComputed();
+		double[] computed = state.get(NDArrayIndex.all(), NDArrayIndex.interval(first, plan.size())).dup('f').data()
+				.asDouble();
+		values = new double[computed.length];
+
+		for (int k = 0; k < plan.getNumComputed(); k++) {
+			System.arraycopy(computed, (columns[first + k] - first) * batchSize, values, k * batchSize, batchSize);
+		}
+	}
+
+	private void computeNeurons(INDArray state, int batchSize, INDArray inputSums) {
+		int first = plan.getFirstComputed();
+
+		for (int k = 0; k < sources.length; k++) {
+			INDArray output;
+
+			if (sources[k] == null) {
+				// no incoming links, same as a GeneralNeuron with a zero input
+				output = transferFunctions[k]
+						.compute(inputSums == null ? BufferPool.zeros(batchSize) : inputSums.getColumn(k));
+			} else {
+				// shape = (batchSize,numInputsToNeuron)
+				INDArray input = state.getColumns(sources[k]).mmul(weightColumns[k]);
+
+				if (inputSums != null) {
+					input.addi(inputSums.getColumn(k));
+				}
+
+				// the product is ours, so it is activated where it is
+				output = transferFunctions[k].computeInPlace(input);
+			}
+
+			state.putColumn(first + k, output);
+		}
+	}
+
+	private void computeLayers(INDArray state, int batchSize, INDArray inputSums) {
+		int first = plan.getFirstComputed();
+		int[] depths = plan.getDepths();
+
+		for (int l = 0; l < layerSources.length; l++) {
+			int from = layerStart[l], to = layerStart[l + 1];
+			INDArray layerSums = inputSums == null ? null
+					: inputSums.get(NDArrayIndex.all(), NDArrayIndex.interval(from - first, to - first));
+			INDArray input;
+			// whether input was allocated here and may be overwritten
+			boolean owned = true;
+
+			if (layerSources[l] == null) {
+				input = layerSums == null ? Nd4j.zeros(batchSize, to - from) : layerSums;
+				owned = layerSums == null;
+			} else {
+				// shape = (batchSize,layerSize)
+				input = state.getColumns(layerSources[l]).mmul(layerWeights[l]);
+
+				if (layerSums != null) {
+					input.addi(layerSums);
+				}
+			}
+
+			if (layerFunctions[l] != null) {
+				state.put(new INDArrayIndex[] { NDArrayIndex.all(), NDArrayIndex.interval(from, to) },
+						owned ? layerFunctions[l].computeInPlace(input) : layerFunctions[l].compute(input));
+			} else {
+				for (int k = 0; k < depths.length; k++) {
+					if (depths[k] == l + 1) {
+						int column = columns[first + k];
+						INDArray neuronInput = input.getColumn(column - from);
+						state.putColumn(column, owned ? transferFunctions[k].computeInPlace(neuronInput)
+								: transferFunctions[k].compute(neuronInput));
+					}
+				}
+			}
+		}
+	}
+
+	public INDArray getOutput() {
+		// shape = (batchSize,numOutputs)
+		return output;
+	}
+
+	public double[] getOutputColumns() {
+		// column major, output i of sample s at i * batchSize + s
+		return output.dup('f').data().asDouble();
+	}
+
+	public int getStateColumn(int index) {
+		return columns[index];
+	}
+
+	public NetworkPlan getPlan() {
+		return plan;
+	}
+
+	public double[] getWeights() {
+		return weights;
+	}
+
+	public void setRecording(boolean recording) {
+		this.recording = recording;
+	}
+
+	public double[] getValues() {
+		// null unless recording
+		return values;
+	}
+}
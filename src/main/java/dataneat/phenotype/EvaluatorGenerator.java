@@ -0,0 +1,433 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import dataneat.transferFunction.SigmoidFunction;
+
+public class EvaluatorGenerator {
+	// writes a GeneratedEvaluator subclass for a NetworkPlan, with every neuron
+	// unrolled into straight line code: no maps, no boxing and a single call
+	// per neuron to the sigmoid kernel the run selected, which is the only
+	// kernel the JIT ever sees there and inlines. Classes are cached by
+	// topology, so chromosomes that only differ in their weights (or run with
+	// another kernel) reuse the class with their own weights and kernel.
+	// Each class gets its own class loader, once it drops out of the cache
+	// and no network uses it anymore the class can be garbage collected.
+	// The generated code has no branches and is written as a version 49 class
+	// file, which does not need stack map frames
+
+	private static final int MAX_CLASSES = 256;
+	private static final int MAX_CODE_LENGTH = 65535;
+	private static final String PACKAGE = "dataneat/phenotype/generated/";
+	private static final String SUPER_NAME = "dataneat/phenotype/GeneratedEvaluator";
+	private static final String SIGMOID_NAME = "dataneat/transferFunction/SigmoidFunction";
+	private static final String SIGMOID_DESC = "L" + SIGMOID_NAME + ";";
+	private static final AtomicInteger classCount = new AtomicInteger();
+
+	// least recently used topologies are dropped first. A null class marks a
+	// topology that is too large to generate
+	private Map<NetworkPlan, Class<?>> classes = new LinkedHashMap<NetworkPlan, Class<?>>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<NetworkPlan, Class<?>> eldest) {
+			return size() > MAX_CLASSES;
+		}
+	};
+
+	private EvaluatorGenerator() {}
+
+	private static class EvaluatorGeneratorHolder {
+		private static final EvaluatorGenerator INSTANCE = new EvaluatorGenerator();
+	}
+
+	public static EvaluatorGenerator getEvaluatorGenerator() {
+		return EvaluatorGeneratorHolder.INSTANCE;
+	}
+
+	public GeneratedEvaluator newEvaluator(NetworkPlan plan, double[] weights, SigmoidFunction sigmoid) {
+		// returns null when the network does not fit in a single method
+		Class<?> evaluatorClass;
+		boolean known;
+
+		synchronized (this) {
+			known = classes.containsKey(plan);
+			evaluatorClass = classes.get(plan);
+		}
+
+		if (!known) {
+			// generated outside the lock, at worst two threads both write
+			// the class for a new topology
+			evaluatorClass = generate(plan);
+
+			synchronized (this) {
+				classes.put(plan, evaluatorClass);
+			}
+		}
+
+		if (evaluatorClass == null) {
+			return null;
+		}
+
+		try {
+			GeneratedEvaluator evaluator = (GeneratedEvaluator) evaluatorClass.getDeclaredConstructor().newInstance();
+			evaluator.setWeights(weights);
+			evaluator.setSigmoid(sigmoid);
+			return evaluator;
+		} catch (ReflectiveOperationException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+
+	public synchronized int size() {
+		return classes.size();
+	}
+
+	private Class<?> generate(NetworkPlan plan) {
+		String name = PACKAGE + "Evaluator" + classCount.incrementAndGet();
+		ClassFile file = new ClassFile(name, SUPER_NAME);
+
+		Code init = new Code(file, 1, 1);
+		init.op(ALOAD_0);
+		init.op(INVOKESPECIAL).u2(file.methodRef(SUPER_NAME, "<init>", "()V"));
+		init.op(RETURN);
+		file.addMethod("<init>", "()V", init);
+
+		Code eval = evalCode(file, plan);
+		Code step = stepCode(file, plan);
+
+		if (eval.length() > MAX_CODE_LENGTH || step.length() > MAX_CODE_LENGTH) {
+			return null;
+		}
+
+		file.addMethod("eval", "([D[D)V", eval);
+		file.addMethod("step", "([D[DI)V", step);
+
+		byte[] bytes = file.toByteArray();
+		return new EvaluatorLoader().define(name.replace('/', '.'), bytes);
+	}
+
+	private Code evalCode(ClassFile file, NetworkPlan plan) {
+		// locals: 0 this, 1 in, 2 out, 3 weights, 4 sigmoid, then one double
+		// per neuron
+		Code code = new Code(file, 10, 5 + 2 * plan.size());
+		int first = plan.getFirstComputed();
+		int[] linkStart = plan.getLinkStart();
+		int[] forwardEnd = plan.getForwardEnd();
+		int[] linkSource = plan.getLinkSource();
+		int[] biasLinks = plan.getBiasLinks();
+
+		code.op(ALOAD_0).op(GETFIELD).u2(file.fieldRef(SUPER_NAME, "weights", "[D"));
+		code.var(ASTORE, 3);
+		code.op(ALOAD_0).op(GETFIELD).u2(file.fieldRef(SUPER_NAME, "sigmoid", SIGMOID_DESC));
+		code.var(ASTORE, 4);
+
+		for (int i = 0; i < plan.getNumInputs(); i++) {
+			code.op(ALOAD_1).push(i).op(DALOAD).var(DSTORE, neuronVar(i));
+		}
+
+		// same as Network on the current timestep, links from neurons that
+		// are evaluated later always read zero so they are left out
+		for (int k = 0; k < plan.getNumComputed(); k++) {
+			code.var(ALOAD, 4);
+
+			if (forwardEnd[k] == linkStart[k]) {
+				code.op(DCONST_0);
+			}
+
+			for (int j = linkStart[k]; j < forwardEnd[k]; j++) {
+				if (j == biasLinks[k]) {
+					// the bias link adds its weight as is
+					code.var(ALOAD, 3).push(j).op(DALOAD);
+				} else {
+					code.var(DLOAD, neuronVar(linkSource[j]));
+					code.var(ALOAD, 3).push(j).op(DALOAD).op(DMUL);
+				}
+
+				if (j > linkStart[k]) {
+					code.op(DADD);
+				}
+			}
+
+			sigmoid(file, code);
+			code.var(DSTORE, neuronVar(first + k));
+		}
+
+		int[] outputIndices = plan.getOutputIndices();
+		for (int i = 0; i < outputIndices.length; i++) {
+			code.op(ALOAD_2).push(i).var(DLOAD, neuronVar(outputIndices[i])).op(DASTORE);
+		}
+
+		code.op(RETURN);
+		return code;
+	}
+
+	private Code stepCode(ClassFile file, NetworkPlan plan) {
+		// locals: 0 this, 1 prev, 2 next, 3 offset, 4 weights, 5 sigmoid
+		Code code = new Code(file, 12, 6);
+		int first = plan.getFirstComputed();
+		int[] linkStart = plan.getLinkStart();
+		int[] linkSource = plan.getLinkSource();
+		int[] biasLinks = plan.getBiasLinks();
+
+		code.op(ALOAD_0).op(GETFIELD).u2(file.fieldRef(SUPER_NAME, "weights", "[D"));
+		code.var(ASTORE, 4);
+		code.op(ALOAD_0).op(GETFIELD).u2(file.fieldRef(SUPER_NAME, "sigmoid", SIGMOID_DESC));
+		code.var(ASTORE, 5);
+
+		// same as Network on the previous timestep, every link reads the
+		// previous output of its source
+		for (int k = 0; k < plan.getNumComputed(); k++) {
+			code.op(ALOAD_2).var(ILOAD, 3).push(first + k).op(IADD);
+			code.var(ALOAD, 5);
+
+			if (linkStart[k + 1] == linkStart[k]) {
+				code.op(DCONST_0);
+			}
+
+			for (int j = linkStart[k]; j < linkStart[k + 1]; j++) {
+				if (j == biasLinks[k]) {
+					code.var(ALOAD, 4).push(j).op(DALOAD);
+				} else {
+					code.op(ALOAD_1).var(ILOAD, 3).push(linkSource[j]).op(IADD).op(DALOAD);
+					code.var(ALOAD, 4).push(j).op(DALOAD).op(DMUL);
+				}
+
+				if (j > linkStart[k]) {
+					code.op(DADD);
+				}
+			}
+
+			sigmoid(file, code);
+			code.op(DASTORE);
+		}
+
+		code.op(RETURN);
+		return code;
+	}
+
+	private void sigmoid(ClassFile file, Code code) {
+		// the stack holds the kernel and the weighted sum x, leaves sigmoid(x)
+		code.op(INVOKEVIRTUAL).u2(file.methodRef(SIGMOID_NAME, "compute", "(D)D"));
+	}
+
+	private int neuronVar(int index) {
+		return 5 + 2 * index;
+	}
+
+	private static class EvaluatorLoader extends ClassLoader {
+
+		EvaluatorLoader() {
+			super(GeneratedEvaluator.class.getClassLoader());
+		}
+
+		Class<?> define(String name, byte[] bytes) {
+			return defineClass(name, bytes, 0, bytes.length);
+		}
+	}
+
+	// opcodes used by the generated code
+	private static final int ICONST_0 = 0x03, BIPUSH = 0x10, SIPUSH = 0x11, LDC_W = 0x13;
+	private static final int DCONST_0 = 0x0e;
+	private static final int ILOAD = 0x15, DLOAD = 0x18, ALOAD = 0x19;
+	private static final int ALOAD_0 = 0x2a, ALOAD_1 = 0x2b, ALOAD_2 = 0x2c;
+	private static final int DALOAD = 0x31, DSTORE = 0x39, ASTORE = 0x3a, DASTORE = 0x52;
+	private static final int IADD = 0x60, DADD = 0x63, DMUL = 0x6b;
+	private static final int RETURN = 0xb1, GETFIELD = 0xb4, INVOKEVIRTUAL = 0xb6, INVOKESPECIAL = 0xb7;
+	private static final int WIDE = 0xc4;
+
+	private static class Bytes {
+		// growable big endian byte buffer
+		private byte[] data = new byte[256];
+		private int length = 0;
+
+		Bytes u1(int value) {
+			if (length == data.length) {
+				data = Arrays.copyOf(data, data.length * 2);
+			}
+			data[length++] = (byte) value;
+			return this;
+		}
+
+		Bytes u2(int value) {
+			return u1(value >>> 8).u1(value);
+		}
+
+		Bytes u4(int value) {
+			return u2(value >>> 16).u2(value);
+		}
+
+		Bytes bytes(Bytes other) {
+			for (int i = 0; i < other.length; i++) {
+				u1(other.data[i]);
+			}
+			return this;
+		}
+
+		int length() {
+			return length;
+		}
+
+		byte[] toByteArray() {
+			return Arrays.copyOf(data, length);
+		}
+	}
+
+	private static class Code extends Bytes {
+		// the body of one method, with the operand stack and local variable
+		// sizes worked out by the caller
+		private ClassFile file;
+		private int maxStack, maxLocals;
+
+		Code(ClassFile file, int maxStack, int maxLocals) {
+			this.file = file;
+			this.maxStack = maxStack;
+			this.maxLocals = maxLocals;
+		}
+
+		Code op(int opcode) {
+			u1(opcode);
+			return this;
+		}
+
+		Code var(int opcode, int index) {
+			if (index > 255) {
+				u1(WIDE).u1(opcode).u2(index);
+			} else {
+				u1(opcode).u1(index);
+			}
+			return this;
+		}
+
+		Code push(int value) {
+			if (value <= 5) {
+				u1(ICONST_0 + value);
+			} else if (value <= Byte.MAX_VALUE) {
+				u1(BIPUSH).u1(value);
+			} else if (value <= Short.MAX_VALUE) {
+				u1(SIPUSH).u2(value);
+			} else {
+				u1(LDC_W).u2(file.integer(value));
+			}
+			return this;
+		}
+	}
+
+	private static class ClassFile {
+		private Bytes pool = new Bytes();
+		private int poolCount = 1;
+		private Map<String, Integer> poolIndex = new HashMap<String, Integer>();
+		private Bytes methods = new Bytes();
+		private int methodCount = 0;
+		private int thisClass, superClass, codeName;
+
+		ClassFile(String name, String superName) {
+			thisClass = classRef(name);
+			superClass = classRef(superName);
+			codeName = utf8("Code");
+		}
+
+		int utf8(String value) {
+			Integer index = poolIndex.get("U" + value);
+			if (index == null) {
+				byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+				pool.u1(1).u2(bytes.length);
+				for (byte b : bytes) {
+					pool.u1(b);
+				}
+				index = add("U" + value);
+			}
+			return index;
+		}
+
+		int integer(int value) {
+			Integer index = poolIndex.get("I" + value);
+			if (index == null) {
+				pool.u1(3).u4(value);
+				index = add("I" + value);
+			}
+			return index;
+		}
+
+		int classRef(String name) {
+			Integer index = poolIndex.get("C" + name);
+			if (index == null) {
+				int nameIndex = utf8(name);
+				pool.u1(7).u2(nameIndex);
+				index = add("C" + name);
+			}
+			return index;
+		}
+
+		int fieldRef(String owner, String name, String desc) {
+			return memberRef(9, owner, name, desc);
+		}
+
+		int methodRef(String owner, String name, String desc) {
+			return memberRef(10, owner, name, desc);
+		}
+
+		private int memberRef(int tag, String owner, String name, String desc) {
+			String key = tag + owner + "." + name + desc;
+			Integer index = poolIndex.get(key);
+			if (index == null) {
+				int ownerIndex = classRef(owner);
+				int nameIndex = utf8(name), descIndex = utf8(desc);
+				Integer nameAndType = poolIndex.get("N" + name + desc);
+				if (nameAndType == null) {
+					pool.u1(12).u2(nameIndex).u2(descIndex);
+					nameAndType = add("N" + name + desc);
+				}
+				pool.u1(tag).u2(ownerIndex).u2(nameAndType);
+				index = add(key);
+			}
+			return index;
+		}
+
+		private int add(String key) {
+			poolIndex.put(key, poolCount);
+			return poolCount++;
+		}
+
+		void addMethod(String name, String desc, Code code) {
+			// public method with a single Code attribute
+			methods.u2(0x0001).u2(utf8(name)).u2(utf8(desc)).u2(1);
+			methods.u2(codeName).u4(12 + code.length());
+			methods.u2(code.maxStack).u2(code.maxLocals).u4(code.length()).bytes(code);
+			methods.u2(0).u2(0);
+			methodCount++;
+		}
+
+		byte[] toByteArray() {
+			Bytes out = new Bytes();
+			out.u4(0xCAFEBABE).u2(0).u2(49);
+			out.u2(poolCount).bytes(pool);
+			// public final super, no interfaces or fields
+			out.u2(0x0031).u2(thisClass).u2(superClass).u2(0).u2(0);
+			out.u2(methodCount).bytes(methods);
+			out.u2(0);
+			return out.toByteArray();
+		}
+	}
+}
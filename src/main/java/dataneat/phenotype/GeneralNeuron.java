@@ -19,14 +19,14 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.nd4j.linalg.api.ndarray.INDArray;
-import org.nd4j.linalg.factory.Nd4j;
 import org.nd4j.linalg.ops.transforms.Transforms;
 
 import dataneat.genome.NeuronGene;
 import dataneat.genome.NeuronType;
 import dataneat.transferFunction.IdentityFunction;
-import dataneat.transferFunction.SigmoidFunction;
 import dataneat.transferFunction.TransferFunction;
+import dataneat.transferFunction.TransferFunctions;
+import dataneat.utils.BufferPool;
 import dataneat.utils.PropertiesHolder;
 
 public class GeneralNeuron extends BaseNeuron {
@@ -49,14 +49,14 @@ public class GeneralNeuron extends BaseNeuron {
 			transferFunction = new IdentityFunction();
 			break;
 		case BIAS:			
-			output = Nd4j.ones(batchSize,1);
+			output = BufferPool.ones(batchSize);
 			prevOutput = output;
 			break;
 		case HIDDEN:
-			transferFunction = new SigmoidFunction();
+			transferFunction = TransferFunctions.sigmoid(p);
 			break;
 		case OUTPUT:
-			transferFunction = new SigmoidFunction();
+			transferFunction = TransferFunctions.sigmoid(p);
 			break;
 		default:
 			break;
@@ -0,0 +1,56 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import dataneat.transferFunction.SigmoidFunction;
+
+public abstract class GeneratedEvaluator {
+	// superclass of the classes EvaluatorGenerator writes for a topology. The
+	// generated methods are straight line code over one sample, the link
+	// weights are read from the weights array in NetworkPlan link order, so
+	// every chromosome with the same topology can share the class. Neurons
+	// are activated by the sigmoid kernel the run selected
+
+	protected double[] weights;
+	protected SigmoidFunction sigmoid;
+
+	protected GeneratedEvaluator() {}
+
+	// current timestep, in holds the inputs and out receives the outputs in
+	// NeuronDB order
+	public abstract void eval(double[] in, double[] out);
+
+	// one previous timestep iteration. Reads the neuron outputs of one sample
+	// from prev and writes the computed neurons into next, both laid out in
+	// NetworkPlan order starting at offset
+	public abstract void step(double[] prev, double[] next, int offset);
+
+	public double[] getWeights() {
+		return weights;
+	}
+
+	public void setWeights(double[] weights) {
+		this.weights = weights;
+	}
+
+	public SigmoidFunction getSigmoid() {
+		return sigmoid;
+	}
+
+	public void setSigmoid(SigmoidFunction sigmoid) {
+		this.sigmoid = sigmoid;
+	}
+}
@@ -0,0 +1,214 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Arrays;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import dataneat.base.BaseNeat;
+import dataneat.genome.NeatChromosome;
+import dataneat.transferFunction.TransferFunctions;
+import dataneat.utils.BufferPool;
+import dataneat.utils.PropertiesHolder;
+
+public class GeneratedNetwork extends BaseNeat {
+	// runs a chromosome through the class EvaluatorGenerator wrote for its
+	// topology, one sample at a time. Networks too large to generate are run
+	// by a PrimitiveNetwork instead
+
+	private static final long serialVersionUID = 1L;
+	private static final String STABIL_THRESH = "stabilizationDelta";
+	private static final String PER_SAMPLE = "perSampleConvergence";
+	private NetworkPlan plan;
+	private double[] weights;
+	private GeneratedEvaluator evaluator;
+	private PrimitiveNetwork fallback;
+	private double stabilDelta = 0.01;
+	private boolean perSample = false;
+	private int batchSize = 0;
+	// column major, output i of sample s at i * batchSize + s
+	private double[] outputs;
+
+	public GeneratedNetwork() {}
+
+	public GeneratedNetwork(NeatChromosome chrom, PropertiesHolder p) {
+		this(PlanCache.getPlanCache().getPlan(chrom), chrom, p);
+	}
+
+	public GeneratedNetwork(NetworkPlan plan, NeatChromosome chrom, PropertiesHolder p) {
+		this(plan, plan.extractWeights(chrom), p);
+	}
+
+	public GeneratedNetwork(NetworkPlan plan, double[] weights, PropertiesHolder p) {
+		super(p);
+		this.plan = plan;
+		this.weights = weights;
+		stabilDelta = Double.parseDouble(getParams().getProperty(STABIL_THRESH));
+		perSample = Integer.parseInt(getParams().getProperty(PER_SAMPLE)) == 1;
+		evaluator = EvaluatorGenerator.getEvaluatorGenerator().newEvaluator(plan, weights,
+				TransferFunctions.sigmoid(p));
+
+		if (evaluator == null) {
+			fallback = new PrimitiveNetwork(plan, weights, p);
+		}
+	}
+
+	// shape = (batchSize,numInputs)
+	public void computeNetCurrentTimestep(INDArray inputs) {
+		computeNetCurrentTimestep(PreparedInput.columnsOf(inputs), inputs.rows());
+	}
+
+	// column major inputs, input i of sample s at i * batchSize + s
+	public void computeNetCurrentTimestep(double[] inputs, int batchSize) {
+		if (fallback != null) {
+			fallback.computeNetCurrentTimestep(inputs, batchSize);
+			return;
+		}
+
+		this.batchSize = batchSize;
+		int numInputs = plan.getNumInputs(), numOutputs = plan.getNumOutputs();
+		double[] in = new double[numInputs];
+		double[] out = new double[numOutputs];
+		outputs = new double[numOutputs * batchSize];
+
+		for (int s = 0; s < batchSize; s++) {
+			for (int i = 0; i < numInputs; i++) {
+				in[i] = inputs[i * batchSize + s];
+			}
+
+			evaluator.eval(in, out);
+
+			for (int i = 0; i < numOutputs; i++) {
+				outputs[i * batchSize + s] = out[i];
+			}
+		}
+	}
+
+	// shape = (batchSize,numInputs)
+	public void computeNetPrevTimestep(INDArray inputs) {
+		computeNetPrevTimestep(PreparedInput.columnsOf(inputs), inputs.rows());
+	}
+
+	public void computeNetPrevTimestep(double[] inputs, int batchSize) {
+		// same iteration as Network, with the whole batch stepped together
+		// until every neuron of every sample is stable, or with
+		// perSampleConvergence each sample until its own neurons are
+		if (plan.isForwardOnly()) {
+			// every link goes forward, so the generated single pass already
+			// is the point the iteration converges to
+			computeNetCurrentTimestep(inputs, batchSize);
+			return;
+		}
+
+		if (plan.isAcyclic() && fallback == null) {
+			// acyclic but not in evaluation order, the plain arrays take the
+			// single topological pass
+			fallback = new PrimitiveNetwork(plan, weights, getHolder());
+		}
+
+		if (fallback != null) {
+			fallback.computeNetPrevTimestep(inputs, batchSize);
+			return;
+		}
+
+		this.batchSize = batchSize;
+		int size = plan.size(), first = plan.getFirstComputed();
+		BufferPool pool = BufferPool.getBufferPool();
+		// sample major, neuron i of sample s at s * size + i
+		double[] state = pool.doubles(BufferPool.STATE, size * batchSize);
+		double[] next = pool.doubles(BufferPool.NEXT, size * batchSize);
+		Arrays.fill(state, 0, size * batchSize, 0.0);
+
+		for (int s = 0; s < batchSize; s++) {
+			for (int i = 0; i < plan.getNumInputs(); i++) {
+				state[s * size + i] = inputs[i * batchSize + s];
+			}
+		}
+
+		// inputs never change, so both buffers start out the same
+		System.arraycopy(state, 0, next, 0, size * batchSize);
+		boolean stable = false;
+		int count = 0;
+		boolean[] settled = perSample ? new boolean[batchSize] : null;
+
+		while (!stable && count < plan.getMaxPasses()) {
+			stable = true;
+
+			for (int s = 0; s < batchSize; s++) {
+				int offset = s * size;
+
+				if (perSample && settled[s]) {
+					continue;
+				}
+
+				evaluator.step(state, next, offset);
+				boolean sampleStable = true;
+
+				for (int i = offset + first; (stable || perSample) && i < offset + size; i++) {
+					if (Math.abs(next[i] - state[i]) >= stabilDelta) {
+						sampleStable = false;
+						break;
+					}
+				}
+
+				if (perSample && sampleStable) {
+					// both buffers keep the final values from now on
+					System.arraycopy(next, offset, state, offset, size);
+					settled[s] = true;
+				}
+				stable &= sampleStable;
+			}
+
+			double[] temp = state;
+			state = next;
+			next = temp;
+			count++;
+		}
+
+		int[] outputIndices = plan.getOutputIndices();
+		outputs = new double[outputIndices.length * batchSize];
+
+		for (int s = 0; s < batchSize; s++) {
+			for (int i = 0; i < outputIndices.length; i++) {
+				outputs[i * batchSize + s] = state[s * size + outputIndices[i]];
+			}
+		}
+	}
+
+	public INDArray getOutput() {
+		// shape = (batchSize,numOutputs)
+		if (fallback != null) {
+			return fallback.getOutput();
+		}
+
+		return Nd4j.create(outputs, new int[] { batchSize, plan.getNumOutputs() }, 'f');
+	}
+
+	public double[] getOutputColumns() {
+		// column major, output i of sample s at i * batchSize + s
+		return fallback != null ? fallback.getOutputColumns() : outputs;
+	}
+
+	public NetworkPlan getPlan() {
+		return plan;
+	}
+
+	public boolean isGenerated() {
+		return evaluator != null;
+	}
+}
@@ -0,0 +1,449 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import dataneat.genome.LinkDB;
+import dataneat.genome.LinkGene;
+import dataneat.genome.NeatChromosome;
+import dataneat.genome.NeuronDB;
+import dataneat.genome.NeuronGene;
+import dataneat.genome.NeuronType;
+
+public class NetworkPlan implements Serializable {
+	// the topology of a chromosome, flattened once so it can be evaluated
+	// without maps or sorting. Neurons get dense indices laid out as inputs,
+	// then the bias, then every computed (hidden and output) neuron in the
+	// order Network evaluates them: hidden sorted by splitY, then outputs.
+	// Incoming links of each computed neuron are stored CSR style.
+	// Hidden neurons that cannot reach an output over enabled links never
+	// change what the network computes, so they are left out of the plan
+	// along with their links. Pruning and disabled links leave plenty of
+	// those behind.
+
+	private static final long serialVersionUID = 1L;
+
+	private int numInputs = 0, numOutputs = 0, numComputed = 0, size = 0;
+	private int biasIndex = -1;
+	private int[] neuronIds;
+	private NeuronType[] types;
+	private int[] outputIndices;
+	private Map<Integer, Integer> indexById = new HashMap<Integer, Integer>();
+
+	// incoming links of computed neuron k are linkSource[linkStart[k]] up to
+	// linkSource[linkStart[k + 1]], sorted by source index. Entries below
+	// forwardEnd[k] come from neurons that are evaluated earlier in a pass
+	private int[] linkStart;
+	private int[] forwardEnd;
+	private int[] linkSource;
+	// index in linkSource of the link from the bias into computed neuron k,
+	// -1 when there is none. The evaluators start the sum of a neuron at its
+	// weight instead of multiplying it by a column of ones
+	private int[] biasLinks;
+	// Network stops relaxing after size * 3 passes, counting every neuron of
+	// the chromosome, dropped ones included. Stability is only checked over
+	// the neurons in the plan though, where Network also waits for the
+	// dropped ones, so when stabilizationDelta ends the iteration the outputs
+	// can be a few passes, each under the threshold, apart from Network's
+	private int maxPasses = 0;
+
+	// topological depth of each computed neuron over the forward links, a
+	// neuron only depends on neurons in shallower layers
+	private int[] depths;
+	private int numLayers = 0;
+	private int hash = 0;
+
+	// computed neurons in an order where every enabled link comes from an
+	// earlier neuron, null when the enabled links form a cycle. Relaxing an
+	// acyclic network on the previous timestep converges to a single pass in
+	// this order
+	private int[] topologicalOrder;
+	// true when every enabled link already goes forward in evaluation order
+	private boolean forwardOnly = true;
+
+	public NetworkPlan(NeatChromosome chrom) {
+		NeuronDB neuronDB = chrom.getNeurons();
+		Set<Integer> live = reachOutputs(neuronDB, chrom.getLinks());
+		List<NeuronGene> inputs = new ArrayList<NeuronGene>();
+		List<NeuronGene> hidden = new ArrayList<NeuronGene>();
+		List<NeuronGene> outputs = new ArrayList<NeuronGene>();
+		NeuronGene bias = null;
+
+		for (int i = 0; i < neuronDB.sizeWithBias(); i++) {
+			NeuronGene n = neuronDB.getByIndex(i);
+			switch (n.getNeuronType()) {
+			case INPUT:
+				inputs.add(n);
+				break;
+			case HIDDEN:
+				if (live.contains(n.getID())) {
+					hidden.add(n);
+				}
+				break;
+			case OUTPUT:
+				outputs.add(n);
+				break;
+			case BIAS:
+				bias = n;
+				break;
+			default:
+				break;
+			}
+		}
+
+		// same (stable) ordering Network uses for the current timestep
+		hidden.sort((neuron1, neuron2) -> Double.compare(neuron1.getSplitY(), neuron2.getSplitY()));
+
+		numInputs = inputs.size();
+		numOutputs = outputs.size();
+		numComputed = hidden.size() + outputs.size();
+		size = numInputs + (bias == null ? 0 : 1) + numComputed;
+		neuronIds = new int[size];
+		types = new NeuronType[size];
+		outputIndices = new int[numOutputs];
+
+		int index = 0;
+		for (NeuronGene n : inputs) {
+			addNeuron(n, index++);
+		}
+
+		if (bias != null) {
+			biasIndex = index;
+			addNeuron(bias, index++);
+		}
+
+		for (NeuronGene n : hidden) {
+			addNeuron(n, index++);
+		}
+
+		for (int i = 0; i < numOutputs; i++) {
+			outputIndices[i] = index;
+			addNeuron(outputs.get(i), index++);
+		}
+
+		maxPasses = neuronDB.sizeWithBias() * 3;
+		buildLinks(chrom.getLinks());
+		hash = 31 * (31 * Arrays.hashCode(neuronIds) + Arrays.hashCode(linkStart)) + Arrays.hashCode(linkSource);
+	}
+
+	private Set<Integer> reachOutputs(NeuronDB neuronDB, LinkDB links) {
+		// ids of the neurons with a path over enabled links to an output,
+		// walking the links backwards from the outputs
+		Map<Integer, List<Integer>> sourcesById = new HashMap<Integer, List<Integer>>();
+
+		for (int i = 0; i < links.size(); i++) {
+			LinkGene l = links.getByIndex(i);
+			if (l.isEnabled()) {
+				sourcesById.computeIfAbsent(l.getToNeuronID(), id -> new ArrayList<Integer>()).add(l.getFromNeuronID());
+			}
+		}
+
+		Set<Integer> live = new HashSet<Integer>();
+		ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+
+		for (int i = 0; i < neuronDB.sizeWithBias(); i++) {
+			NeuronGene n = neuronDB.getByIndex(i);
+			if (n.getNeuronType() == NeuronType.OUTPUT && live.add(n.getID())) {
+				pending.add(n.getID());
+			}
+		}
+
+		while (!pending.isEmpty()) {
+			List<Integer> sources = sourcesById.get(pending.poll());
+			if (sources != null) {
+				for (int id : sources) {
+					if (live.add(id)) {
+						pending.add(id);
+					}
+				}
+			}
+		}
+
+		return live;
+	}
+
+	private void addNeuron(NeuronGene n, int index) {
+		neuronIds[index] = n.getID();
+		types[index] = n.getNeuronType();
+		indexById.put(n.getID(), index);
+	}
+
+	private void buildLinks(LinkDB links) {
+		// count the enabled links going into each computed neuron, then fill
+		int[] counts = new int[numComputed];
+		int total = 0;
+
+		for (int i = 0; i < links.size(); i++) {
+			LinkGene l = links.getByIndex(i);
+			if (isKept(l)) {
+				counts[getComputedIndex(l.getToNeuronID())]++;
+				total++;
+			}
+		}
+
+		linkStart = new int[numComputed + 1];
+		for (int k = 0; k < numComputed; k++) {
+			linkStart[k + 1] = linkStart[k] + counts[k];
+		}
+
+		linkSource = new int[total];
+		int[] fill = Arrays.copyOf(linkStart, numComputed);
+
+		for (int i = 0; i < links.size(); i++) {
+			LinkGene l = links.getByIndex(i);
+			if (isKept(l)) {
+				int k = getComputedIndex(l.getToNeuronID());
+				linkSource[fill[k]++] = indexById.get(l.getFromNeuronID());
+			}
+		}
+
+		forwardEnd = new int[numComputed];
+		biasLinks = new int[numComputed];
+		for (int k = 0; k < numComputed; k++) {
+			Arrays.sort(linkSource, linkStart[k], linkStart[k + 1]);
+			// the bias sits right after the inputs, so its link does too
+			biasLinks[k] = -1;
+			for (int j = linkStart[k]; j < linkStart[k + 1] && linkSource[j] <= biasIndex; j++) {
+				if (linkSource[j] == biasIndex) {
+					biasLinks[k] = j;
+				}
+			}
+
+			int target = getFirstComputed() + k;
+			int end = linkStart[k];
+			while (end < linkStart[k + 1] && linkSource[end] < target) {
+				end++;
+			}
+			forwardEnd[k] = end;
+		}
+
+		depths = new int[numComputed];
+		int first = getFirstComputed();
+
+		for (int k = 0; k < numComputed; k++) {
+			int depth = 1;
+
+			for (int j = linkStart[k]; j < forwardEnd[k]; j++) {
+				if (linkSource[j] >= first) {
+					depth = Math.max(depth, depths[linkSource[j] - first] + 1);
+				}
+			}
+
+			depths[k] = depth;
+			numLayers = Math.max(numLayers, depth);
+
+			if (forwardEnd[k] < linkStart[k + 1]) {
+				forwardOnly = false;
+			}
+		}
+
+		buildTopologicalOrder();
+	}
+
+	private void buildTopologicalOrder() {
+		// Kahn's algorithm over the links between computed neurons, a self
+		// loop counts as a cycle
+		int first = getFirstComputed();
+		int[] pending = new int[numComputed];
+		int[] outStart = new int[numComputed + 1];
+
+		for (int j = 0; j < linkSource.length; j++) {
+			if (linkSource[j] >= first) {
+				outStart[linkSource[j] - first + 1]++;
+			}
+		}
+		for (int k = 0; k < numComputed; k++) {
+			outStart[k + 1] += outStart[k];
+		}
+
+		// targets of the links leaving each computed neuron
+		int[] outTarget = new int[outStart[numComputed]];
+		int[] fill = Arrays.copyOf(outStart, numComputed);
+
+		for (int k = 0; k < numComputed; k++) {
+			for (int j = linkStart[k]; j < linkStart[k + 1]; j++) {
+				if (linkSource[j] >= first) {
+					outTarget[fill[linkSource[j] - first]++] = k;
+					pending[k]++;
+				}
+			}
+		}
+
+		int[] order = new int[numComputed];
+		int head = 0, tail = 0;
+
+		for (int k = 0; k < numComputed; k++) {
+			if (pending[k] == 0) {
+				order[tail++] = k;
+			}
+		}
+
+		while (head < tail) {
+			int k = order[head++];
+			for (int j = outStart[k]; j < outStart[k + 1]; j++) {
+				if (--pending[outTarget[j]] == 0) {
+					order[tail++] = outTarget[j];
+				}
+			}
+		}
+
+		topologicalOrder = tail == numComputed ? order : null;
+	}
+
+	public double[] extractWeights(NeatChromosome chrom) {
+		// pulls the link weights of a chromosome into the plan's CSR layout.
+		// Works for any chromosome with the same topology as the one the plan
+		// was built from
+		LinkDB links = chrom.getLinks();
+		double[] weights = new double[linkSource.length];
+
+		for (int k = 0; k < numComputed; k++) {
+			int to = neuronIds[getFirstComputed() + k];
+
+			for (int j = linkStart[k]; j < linkStart[k + 1]; j++) {
+				weights[j] = links.getByTerminations(neuronIds[linkSource[j]], to).getWeight();
+			}
+		}
+
+		return weights;
+	}
+
+	private boolean isKept(LinkGene l) {
+		// links into dropped neurons are dropped with them
+		return l.isEnabled() && indexById.containsKey(l.getToNeuronID());
+	}
+
+	private int getComputedIndex(int neuronId) {
+		return indexById.get(neuronId) - getFirstComputed();
+	}
+
+	public int getFirstComputed() {
+		return numInputs + (biasIndex < 0 ? 0 : 1);
+	}
+
+	public int getNumInputs() {
+		return numInputs;
+	}
+
+	public int getNumOutputs() {
+		return numOutputs;
+	}
+
+	public int getNumComputed() {
+		return numComputed;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public int getNumLinks() {
+		return linkSource.length;
+	}
+
+	public int getBiasIndex() {
+		return biasIndex;
+	}
+
+	public int getNeuronId(int index) {
+		return neuronIds[index];
+	}
+
+	public NeuronType getType(int index) {
+		return types[index];
+	}
+
+	public int[] getOutputIndices() {
+		return outputIndices;
+	}
+
+	public int[] getLinkStart() {
+		return linkStart;
+	}
+
+	public int[] getForwardEnd() {
+		return forwardEnd;
+	}
+
+	public int[] getLinkSource() {
+		return linkSource;
+	}
+
+	public int[] getBiasLinks() {
+		return biasLinks;
+	}
+
+	public int getMaxPasses() {
+		return maxPasses;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		// two plans are equal when they lay out the same neurons in the same
+		// order with the same enabled links, so they can share weights layouts
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof NetworkPlan)) {
+			return false;
+		}
+
+		NetworkPlan other = (NetworkPlan) obj;
+		return hash == other.hash && numInputs == other.numInputs && numOutputs == other.numOutputs
+				&& biasIndex == other.biasIndex && maxPasses == other.maxPasses
+				&& Arrays.equals(neuronIds, other.neuronIds)
+				&& Arrays.equals(linkStart, other.linkStart) && Arrays.equals(linkSource, other.linkSource);
+	}
+
+	public boolean hasSameNeurons(NetworkPlan other) {
+		// same neurons at the same indices, the links may differ
+		return Arrays.equals(neuronIds, other.neuronIds);
+	}
+
+	public boolean isAcyclic() {
+		return topologicalOrder != null;
+	}
+
+	public int[] getTopologicalOrder() {
+		return topologicalOrder;
+	}
+
+	public boolean isForwardOnly() {
+		return forwardOnly;
+	}
+
+	public int[] getDepths() {
+		return depths;
+	}
+
+	public int getNumLayers() {
+		return numLayers;
+	}
+}
@@ -0,0 +1,66 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.EvaluationExecutor;
+
+public class Phenotypes {
+	// the plan and weights of every chromosome of a population, laid out in
+	// one pass and shared by the evaluations on the training batch and on the
+	// test set, so a generation that is also tested builds each network once.
+	// Chromosomes must not change while it is in use, the ones that were not
+	// in the population are laid out when asked for
+
+	private final Map<NeatChromosome, Integer> index;
+	private final NetworkPlan[] plans;
+	private final double[][] weights;
+
+	public Phenotypes(List<NeatChromosome> population) {
+		int popSize = population.size();
+		index = new IdentityHashMap<NeatChromosome, Integer>(popSize * 2);
+		plans = new NetworkPlan[popSize];
+		weights = new double[popSize][];
+
+		for (int i = 0; i < popSize; i++) {
+			index.put(population.get(i), i);
+		}
+
+		EvaluationExecutor.getEvaluationExecutor().forEach(popSize, i -> population.get(i).getGenomeSize(), i -> {
+			plans[i] = PlanCache.getPlanCache().getPlan(population.get(i));
+			weights[i] = plans[i].extractWeights(population.get(i));
+		});
+	}
+
+	public NetworkPlan getPlan(NeatChromosome chrom) {
+		Integer i = index.get(chrom);
+		return i != null ? plans[i] : PlanCache.getPlanCache().getPlan(chrom);
+	}
+
+	public double[] getWeights(NeatChromosome chrom) {
+		// shared, must not be modified
+		Integer i = index.get(chrom);
+		return i != null ? weights[i] : getPlan(chrom).extractWeights(chrom);
+	}
+
+	public int size() {
+		return plans.length;
+	}
+}
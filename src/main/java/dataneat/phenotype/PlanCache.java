@@ -0,0 +1,128 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import dataneat.genome.NeatChromosome;
+
+public class PlanCache {
+	// most offspring (crossover, clones, weight mutations) share their topology
+	// with a chromosome that has already been evaluated, so plans are kept by
+	// TopologyKey and a new chromosome only has to supply its weights. The
+	// cache is least recently used first, bounded by the total number of
+	// neurons and links held by its plans
+
+	private long capacity = 1000000;
+	private long used = 0;
+	private Map<TopologyKey, NetworkPlan> plans = new LinkedHashMap<TopologyKey, NetworkPlan>(16, 0.75f, true);
+	private AtomicLong hits = new AtomicLong(), misses = new AtomicLong(), buildNanos = new AtomicLong();
+
+	private PlanCache() {}
+
+	private static class PlanCacheHolder {
+		private static final PlanCache INSTANCE = new PlanCache();
+	}
+
+	public static PlanCache getPlanCache() {
+		return PlanCacheHolder.INSTANCE;
+	}
+
+	public NetworkPlan getPlan(NeatChromosome chrom) {
+		TopologyKey key = new TopologyKey(chrom);
+		NetworkPlan plan;
+
+		synchronized (this) {
+			plan = plans.get(key);
+		}
+
+		if (plan != null) {
+			hits.incrementAndGet();
+			return plan;
+		}
+
+		// built outside the lock, a topology seen by two threads at once is
+		// simply built twice
+		long start = System.nanoTime();
+		plan = new NetworkPlan(chrom);
+		buildNanos.addAndGet(System.nanoTime() - start);
+		misses.incrementAndGet();
+
+		synchronized (this) {
+			if (plans.put(key, plan) == null) {
+				used += weight(plan);
+			}
+			evict();
+		}
+
+		return plan;
+	}
+
+	private long weight(NetworkPlan plan) {
+		return plan.size() + plan.getNumLinks();
+	}
+
+	private void evict() {
+		Iterator<NetworkPlan> it = plans.values().iterator();
+
+		while (used > capacity && it.hasNext()) {
+			used -= weight(it.next());
+			it.remove();
+		}
+	}
+
+	public synchronized void clear() {
+		plans.clear();
+		used = 0;
+	}
+
+	public void resetCounters() {
+		hits.set(0);
+		misses.set(0);
+		buildNanos.set(0);
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getSavedNanos() {
+		// estimate of the build time the hits saved, at the average build
+		// time of the misses
+		long m = misses.get();
+		return m == 0 ? 0 : hits.get() * (buildNanos.get() / m);
+	}
+
+	public synchronized int size() {
+		return plans.size();
+	}
+
+	public synchronized long getCapacity() {
+		return capacity;
+	}
+
+	public synchronized void setCapacity(long capacity) {
+		this.capacity = capacity;
+		evict();
+	}
+}
@@ -0,0 +1,446 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+import org.nd4j.linalg.indexing.NDArrayIndex;
+
+import dataneat.base.BaseNeat;
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.EvaluationExecutor;
+import dataneat.utils.PropertiesHolder;
+
+public class PopulationEvaluator extends BaseNeat {
+	// evaluates a whole population on the current timestep against the same
+	// inputs. The input and bias links of up to evalBlockSize networks are
+	// stacked side by side into one (numInputs, sumOfComputedNeurons) matrix,
+	// so the features are multiplied once per block instead of once per
+	// chromosome. Chromosomes with the same topology share a NetworkPlan, and
+	// chromosomes that also have the same weights (clones, elites) are only
+	// evaluated once. Small networks skip ND4J and run as PrimitiveNetworks,
+	// or FloatPrimitiveNetworks when floatEval is set.
+	// Networks are recorded in the ActivationCache, and a network whose own
+	// or parent's activations on these inputs are cached only recomputes the
+	// neurons downstream of its changes. When nothing is cached yet (a new
+	// batch), one network per parent is evaluated in full first, an unchanged
+	// copy such as an elite when there is one, and its siblings start from it
+
+	private static final long serialVersionUID = 1L;
+	private static final String EVAL_BLOCK_SIZE = "evalBlockSize";
+	private static final String PRIMITIVE_MAX_NEURONS = "primitiveMaxNeurons";
+	private static final String PRIMITIVE_MAX_BATCH = "primitiveMaxBatch";
+	private static final String GENERATED_MAX_BATCH = "generatedMaxBatch";
+	private static final String FLOAT_EVAL = "floatEval";
+	private int blockSize = 50;
+	private boolean floatEval = false;
+	private int primitiveMaxNeurons = 50, primitiveMaxBatch = 5000, generatedMaxBatch = 16;
+
+	public PopulationEvaluator(PropertiesHolder p) {
+		super(p);
+		blockSize = Integer.parseInt(getParams().getProperty(EVAL_BLOCK_SIZE));
+		primitiveMaxNeurons = Integer.parseInt(getParams().getProperty(PRIMITIVE_MAX_NEURONS));
+		primitiveMaxBatch = Integer.parseInt(getParams().getProperty(PRIMITIVE_MAX_BATCH));
+		generatedMaxBatch = Integer.parseInt(getParams().getProperty(GENERATED_MAX_BATCH));
+		floatEval = Integer.parseInt(getParams().getProperty(FLOAT_EVAL)) == 1;
+	}
+
+	// shape = (batchSize,numInputs), returns the (batchSize,numOutputs) output
+	// of every chromosome in population order. Identical chromosomes get the
+	// same INDArray
+	public List<INDArray> computeNetCurrentTimestep(List<NeatChromosome> population, INDArray inputs) {
+		int[] shape = new int[] { inputs.rows(), 0 };
+		List<INDArray> outputs = new ArrayList<INDArray>(population.size());
+
+		for (double[] columns : computeOutputColumns(population, inputs)) {
+			shape[1] = columns.length / inputs.rows();
+			outputs.add(Nd4j.create(columns, shape, 'f'));
+		}
+
+		return outputs;
+	}
+
+	// the same as column major arrays, output i of sample s at
+	// i * batchSize + s, which the fitness functions read without building
+	// any matrices. Identical chromosomes get the same array
+	public List<double[]> computeOutputColumns(List<NeatChromosome> population, INDArray inputs) {
+		return computeOutputColumns(population, PreparedInput.of(inputs), new Phenotypes(population));
+	}
+
+	// the same with the inputs prepared and the networks already laid out
+	public List<double[]> computeOutputColumns(List<NeatChromosome> population, PreparedInput input,
+			Phenotypes phenotypes) {
+		int popSize = population.size();
+		NetworkPlan[] plans = new NetworkPlan[popSize];
+		double[][] weights = new double[popSize][];
+
+		for (int i = 0; i < popSize; i++) {
+			plans[i] = phenotypes.getPlan(population.get(i));
+			weights[i] = phenotypes.getWeights(population.get(i));
+		}
+
+		// find the distinct networks, equal plans lay out weights the same way
+		Map<NetworkPlan, List<Integer>> byPlan = new HashMap<NetworkPlan, List<Integer>>();
+		List<Integer> distinct = new ArrayList<Integer>();
+		int[] networkOf = new int[popSize];
+
+		for (int i = 0; i < popSize; i++) {
+			List<Integer> samePlan = byPlan.computeIfAbsent(plans[i], plan -> new ArrayList<Integer>());
+			networkOf[i] = -1;
+
+			for (int u : samePlan) {
+				if (Arrays.equals(weights[distinct.get(u)], weights[i])) {
+					networkOf[i] = u;
+					break;
+				}
+			}
+
+			if (networkOf[i] < 0) {
+				networkOf[i] = distinct.size();
+				samePlan.add(distinct.size());
+				distinct.add(i);
+				// share the plan of the first chromosome with this topology
+				plans[i] = plans[distinct.get(samePlan.get(0))];
+			}
+		}
+
+		double[][] distinctOutputs = new double[distinct.size()][];
+		ActivationCache cache = ActivationCache.getActivationCache();
+		// the generated classes only run on a handful of samples, where there
+		// is nothing worth caching
+		boolean incremental = cache.getCapacity() > 0 && input.getBatchSize() > generatedMaxBatch;
+
+		if (incremental) {
+			// the activations are looked up by the batch of the last generation
+			// when it has not changed, so the parents' are found. Both have
+			// the same columns, the full evaluations read the features of the
+			// given one
+			PreparedInput prepared = cache.share(input);
+			List<Integer> full = new ArrayList<Integer>();
+			List<Integer> derived = new ArrayList<Integer>();
+			splitByLineage(population, distinct, plans, weights, prepared, full, derived);
+
+			double[][] values = new double[distinct.size()][];
+			evaluate(full, distinct, plans, weights, input, distinctOutputs, values);
+
+			for (int u : full) {
+				NeatChromosome chrom = population.get(distinct.get(u)), parent = chrom.getParent();
+				Activations a = new Activations(plans[distinct.get(u)], weights[distinct.get(u)], prepared, values[u]);
+				cache.put(chrom, a);
+
+				// siblings start from it
+				if (parent != null && cache.get(parent, prepared) == null) {
+					cache.put(parent, a);
+				}
+			}
+
+			List<Integer> missed = derive(derived, population, distinct, plans, weights, prepared, distinctOutputs);
+			evaluate(missed, distinct, plans, weights, input, distinctOutputs, values);
+
+			for (int u : missed) {
+				cache.put(population.get(distinct.get(u)),
+						new Activations(plans[distinct.get(u)], weights[distinct.get(u)], prepared, values[u]));
+			}
+		} else {
+			List<Integer> all = IntStream.range(0, distinct.size()).boxed().collect(Collectors.toList());
+			evaluate(all, distinct, plans, weights, input, distinctOutputs, null);
+		}
+
+		List<double[]> outputs = new ArrayList<double[]>(popSize);
+		for (int i = 0; i < popSize; i++) {
+			outputs.add(distinctOutputs[networkOf[i]]);
+		}
+
+		return outputs;
+	}
+
+	// shape = (batchSize,numInputs), returns the (batchSize,numOutputs) output
+	// of chrom on the previous timestep
+	public INDArray computeNetPrevTimestep(NeatChromosome chrom, INDArray inputs) {
+		NetworkPlan plan = PlanCache.getPlanCache().getPlan(chrom);
+		double[] columns = computePrevTimestepColumns(plan, plan.extractWeights(chrom), PreparedInput.of(inputs),
+				false);
+		return Nd4j.create(columns, new int[] { inputs.rows(), columns.length / inputs.rows() }, 'f');
+	}
+
+	// the column major output of a single network on the previous timestep.
+	// Small networks run as a generated class on a few samples and vectorized
+	// over the samples otherwise, in single precision when single is set.
+	// The rest relax sample by sample. Size is that of the plan, so neurons
+	// that cannot reach an output do not count
+	public double[] computePrevTimestepColumns(NetworkPlan plan, double[] weights, PreparedInput input,
+			boolean single) {
+		int batchSize = input.getBatchSize();
+		boolean small = isPrimitive(plan, batchSize);
+
+		if (small && batchSize <= generatedMaxBatch) {
+			GeneratedNetwork net = new GeneratedNetwork(plan, weights, getHolder());
+			net.computeNetPrevTimestep(input.getColumns(), batchSize);
+			return net.getOutputColumns();
+		} else if (small && single) {
+			FloatPrimitiveNetwork net = new FloatPrimitiveNetwork(plan, weights, getHolder());
+			net.computeNetPrevTimestep(input);
+			return net.getOutputColumns();
+		} else if (small) {
+			PrimitiveNetwork net = new PrimitiveNetwork(plan, weights, getHolder());
+			net.computeNetPrevTimestep(input);
+			return net.getOutputColumns();
+		} else {
+			RecurrentNetwork net = new RecurrentNetwork(plan, weights, getHolder());
+			net.computeNetPrevTimestep(input);
+			return net.getOutputColumns();
+		}
+	}
+
+	private void splitByLineage(List<NeatChromosome> population, List<Integer> distinct, NetworkPlan[] plans,
+			double[][] weights, PreparedInput input, List<Integer> full, List<Integer> derived) {
+		// networks with cached activations of their own or of their parent are
+		// derived, the others are evaluated in full, except that only one
+		// child per parent has to be: preferably an exact copy of the parent,
+		// otherwise the first one
+		ActivationCache cache = ActivationCache.getActivationCache();
+		Map<NeatChromosome, Integer> firstChild = new IdentityHashMap<NeatChromosome, Integer>();
+		Map<NeatChromosome, Boolean> exactCopy = new IdentityHashMap<NeatChromosome, Boolean>();
+		// parents of the networks still to be split, held so they stay alive
+		NeatChromosome[] parents = new NeatChromosome[distinct.size()];
+
+		for (int u = 0; u < distinct.size(); u++) {
+			int i = distinct.get(u);
+			NeatChromosome chrom = population.get(i), parent = chrom.getParent();
+
+			if (cache.get(chrom, input) != null || cache.get(parent, input) != null) {
+				derived.add(u);
+				continue;
+			}
+
+			if (parent == null) {
+				full.add(u);
+				continue;
+			}
+
+			parents[u] = parent;
+			NetworkPlan parentPlan = PlanCache.getPlanCache().getPlan(parent);
+			boolean copy = parentPlan.equals(plans[i]) && Arrays.equals(parentPlan.extractWeights(parent), weights[i]);
+			Integer first = firstChild.get(parent);
+
+			if (first == null || (copy && !exactCopy.get(parent))) {
+				firstChild.put(parent, u);
+				exactCopy.put(parent, copy);
+			}
+		}
+
+		for (int u = 0; u < distinct.size(); u++) {
+			if (parents[u] != null) {
+				if (firstChild.get(parents[u]) == u) {
+					full.add(u);
+				} else {
+					derived.add(u);
+				}
+			}
+		}
+	}
+
+	private List<Integer> derive(List<Integer> derived, List<NeatChromosome> population, List<Integer> distinct,
+			NetworkPlan[] plans, double[][] weights, PreparedInput input, double[][] outputs) {
+		// evaluates the derived networks from the cached activations, and
+		// returns the ones that turned out to need a full evaluation. Only the
+		// networks evaluate runs on plain arrays are derived, in the same
+		// precision, so a child scores the same either way
+		ActivationCache cache = ActivationCache.getActivationCache();
+		List<Integer> missed = Collections.synchronizedList(new ArrayList<Integer>());
+		EvaluationExecutor executor = EvaluationExecutor.getEvaluationExecutor();
+
+		executor.forEach(derived.size(), d -> cost(derived.get(d), distinct, plans), d -> {
+			int u = derived.get(d), i = distinct.get(u);
+
+			if (!isPrimitive(plans[i], input.getBatchSize())) {
+				missed.add(u);
+				return;
+			}
+
+			NeatChromosome chrom = population.get(i);
+			Activations base = cache.get(chrom, input);
+
+			if (base == null) {
+				base = cache.get(chrom.getParent(), input);
+			}
+
+			boolean[] changed = base == null ? null : base.changedNeurons(plans[i], weights[i]);
+
+			if (changed == null) {
+				missed.add(u);
+				return;
+			}
+
+			double[] values;
+
+			if (floatEval) {
+				FloatPrimitiveNetwork net = new FloatPrimitiveNetwork(plans[i], weights[i], getHolder());
+				net.setRecording(true);
+				net.computeNetCurrentTimestep(input, base, changed);
+				outputs[u] = net.getOutputColumns();
+				values = net.getValues();
+			} else {
+				PrimitiveNetwork net = new PrimitiveNetwork(plans[i], weights[i], getHolder());
+				net.setRecording(true);
+				net.computeNetCurrentTimestep(input, base, changed);
+				outputs[u] = net.getOutputColumns();
+				values = net.getValues();
+			}
+
+			cache.put(chrom, new Activations(plans[i], weights[i], input, values));
+			cache.countDerived();
+		});
+
+		return missed;
+	}
+
+	private void evaluate(List<Integer> networks, List<Integer> distinct, NetworkPlan[] plans, double[][] weights,
+			PreparedInput input, double[][] outputs, double[][] values) {
+		// full evaluation, recording the activations into values when given
+		int batchSize = input.getBatchSize();
+		boolean recording = values != null;
+		EvaluationExecutor executor = EvaluationExecutor.getEvaluationExecutor();
+
+		// split off the networks that are cheaper without ND4J
+		List<Integer> small = new ArrayList<Integer>();
+		List<Integer> large = new ArrayList<Integer>();
+
+		for (int u : networks) {
+			if (isPrimitive(plans[distinct.get(u)], batchSize)) {
+				small.add(u);
+			} else {
+				large.add(u);
+			}
+		}
+
+		executor.forEach(small.size(), s -> cost(small.get(s), distinct, plans), s -> {
+			int u = small.get(s), i = distinct.get(u);
+
+			// on a few samples the generated classes are faster still
+			if (batchSize <= generatedMaxBatch) {
+				GeneratedNetwork net = new GeneratedNetwork(plans[i], weights[i], getHolder());
+				net.computeNetCurrentTimestep(input.getColumns(), batchSize);
+				outputs[u] = net.getOutputColumns();
+			} else if (floatEval) {
+				FloatPrimitiveNetwork net = new FloatPrimitiveNetwork(plans[i], weights[i], getHolder());
+				net.setRecording(recording);
+				net.computeNetCurrentTimestep(input);
+				outputs[u] = net.getOutputColumns();
+				if (recording) {
+					values[u] = net.getValues();
+				}
+			} else {
+				PrimitiveNetwork net = new PrimitiveNetwork(plans[i], weights[i], getHolder());
+				net.setRecording(recording);
+				net.computeNetCurrentTimestep(input);
+				outputs[u] = net.getOutputColumns();
+				if (recording) {
+					values[u] = net.getValues();
+				}
+			}
+		});
+
+		for (int start = 0; start < large.size(); start += blockSize) {
+			int end = Math.min(start + blockSize, large.size());
+			evaluateBlock(large.subList(start, end), distinct, plans, weights, input.getFeatures(), outputs, values);
+		}
+	}
+
+	private void evaluateBlock(List<Integer> block, List<Integer> distinct, NetworkPlan[] plans, double[][] weights,
+			INDArray inputs, double[][] outputs, double[][] values) {
+		int numInputs = inputs.columns();
+		CompiledNetwork[] nets = new CompiledNetwork[block.size()];
+		int[] offsets = new int[block.size() + 1];
+		EvaluationExecutor executor = EvaluationExecutor.getEvaluationExecutor();
+
+		executor.forEach(block.size(), b -> cost(block.get(b), distinct, plans), b -> {
+			int i = distinct.get(block.get(b));
+			nets[b] = new CompiledNetwork(plans[i], weights[i], true, getHolder());
+			nets[b].setRecording(values != null);
+		});
+
+		for (int b = 0; b < block.size(); b++) {
+			offsets[b + 1] = offsets[b] + nets[b].getPlan().getNumComputed();
+		}
+
+		// row major, shape (numInputs, offsets[block.size()])
+		int cols = offsets[block.size()];
+		double[] inputWeights = new double[numInputs * cols];
+		double[] biasWeights = new double[cols];
+		boolean hasBias = false;
+
+		for (int b = 0; b < block.size(); b++) {
+			NetworkPlan plan = nets[b].getPlan();
+			double[] w = weights[distinct.get(block.get(b))];
+			int first = plan.getFirstComputed();
+			int[] linkStart = plan.getLinkStart();
+			int[] linkSource = plan.getLinkSource();
+
+			for (int k = 0; k < plan.getNumComputed(); k++) {
+				int column = offsets[b] + nets[b].getStateColumn(first + k) - first;
+
+				// sources are sorted, so inputs and bias come first
+				for (int j = linkStart[k]; j < linkStart[k + 1] && linkSource[j] < first; j++) {
+					if (linkSource[j] == plan.getBiasIndex()) {
+						biasWeights[column] = w[j];
+						hasBias = true;
+					} else {
+						inputWeights[linkSource[j] * cols + column] = w[j];
+					}
+				}
+			}
+		}
+
+		// shape = (batchSize,cols)
+		INDArray inputSums = inputs.mmul(Nd4j.create(inputWeights, new int[] { numInputs, cols }, 'c'));
+		if (hasBias) {
+			inputSums.addiRowVector(Nd4j.create(biasWeights));
+		}
+
+		executor.forEach(block.size(), b -> cost(block.get(b), distinct, plans), b -> {
+			nets[b].computeNetCurrentTimestep(inputs,
+					inputSums.get(NDArrayIndex.all(), NDArrayIndex.interval(offsets[b], offsets[b + 1])));
+			outputs[block.get(b)] = nets[b].getOutputColumns();
+			if (values != null) {
+				values[block.get(b)] = nets[b].getValues();
+			}
+			// drop the network state as soon as its output is taken
+			nets[b] = null;
+		});
+	}
+
+	private boolean isPrimitive(NetworkPlan plan, int batchSize) {
+		// whether a network is cheaper without ND4J
+		return plan.size() <= primitiveMaxNeurons && batchSize <= primitiveMaxBatch;
+	}
+
+	private static double cost(int u, List<Integer> distinct, NetworkPlan[] plans) {
+		// neurons and links a network computes per sample
+		NetworkPlan plan = plans[distinct.get(u)];
+		return plan.getNumComputed() + plan.getNumLinks();
+	}
+}
@@ -0,0 +1,152 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Arrays;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.dataset.api.DataSet;
+
+public class PreparedInput {
+	// the features of a DataSet laid out once for the evaluators, instead of
+	// being sliced again for every chromosome: a column major copy for the
+	// plain array evaluators and a SparseInput for mostly zero features. The
+	// fitness operators prepare each DataSet they evaluate on once per
+	// generation and hand it to every network and thread, along with the
+	// label columns for the fitness functions. It is not kept in step with
+	// the DataSet, one changed in place has to be prepared again
+
+	private final INDArray features, labels;
+	private final int batchSize, numInputs;
+	// input i of sample s at i * batchSize + s
+	private final double[] columns;
+	// the same in single precision, built the first time it is asked for
+	private volatile float[] floatColumns;
+	// fraction of the features that are nonzero
+	private final double density;
+	private volatile SparseInput sparse;
+	// label i of sample s at i * batchSize + s, built when asked for
+	private volatile double[] labelColumns;
+
+	private PreparedInput(INDArray features, INDArray labels) {
+		this.features = features;
+		this.labels = labels;
+		batchSize = features.rows();
+		numInputs = features.columns();
+		columns = columnsOf(features);
+
+		int nonzeros = 0;
+		for (double v : columns) {
+			if (v != 0.0) {
+				nonzeros++;
+			}
+		}
+		density = columns.length == 0 ? 1.0 : (double) nonzeros / columns.length;
+	}
+
+	public static PreparedInput of(DataSet data) {
+		return new PreparedInput(data.getFeatures(), data.getLabels());
+	}
+
+	// shape = (batchSize,numInputs)
+	public static PreparedInput of(INDArray features) {
+		return new PreparedInput(features, null);
+	}
+
+	public static double[] columnsOf(INDArray array) {
+		// column major copy, column i of row s at i * rows + s. A fresh
+		// fortran ordered copy has exactly this layout
+		return array.dup('f').data().asDouble();
+	}
+
+	public boolean sameContent(PreparedInput other) {
+		// whether other holds the same features, so results computed on one
+		// hold for the other
+		return other == this || (other != null && batchSize == other.batchSize && numInputs == other.numInputs
+				&& Arrays.equals(columns, other.columns));
+	}
+
+	public boolean sameBatch(PreparedInput other) {
+		// whether other also holds the same labels, so fitness computed on
+		// one holds for the other
+		if (!sameContent(other)) {
+			return false;
+		}
+
+		if (other == this || (labels == null && other.labels == null)) {
+			return true;
+		}
+
+		return labels != null && other.labels != null && Arrays.equals(getLabelColumns(), other.getLabelColumns());
+	}
+
+	public INDArray getFeatures() {
+		return features;
+	}
+
+	public double[] getColumns() {
+		return columns;
+	}
+
+	public float[] getFloatColumns() {
+		float[] result = floatColumns;
+
+		if (result == null) {
+			result = new float[columns.length];
+			for (int i = 0; i < columns.length; i++) {
+				result[i] = (float) columns[i];
+			}
+			floatColumns = result;
+		}
+
+		return result;
+	}
+
+	public double getDensity() {
+		return density;
+	}
+
+	public SparseInput getSparse() {
+		SparseInput result = sparse;
+
+		if (result == null) {
+			result = new SparseInput(columns, batchSize, numInputs);
+			sparse = result;
+		}
+
+		return result;
+	}
+
+	public double[] getLabelColumns() {
+		// only prepared from a DataSet
+		double[] result = labelColumns;
+
+		if (result == null) {
+			result = columnsOf(labels);
+			labelColumns = result;
+		}
+
+		return result;
+	}
+
+	public int getBatchSize() {
+		return batchSize;
+	}
+
+	public int getNumInputs() {
+		return numInputs;
+	}
+}
@@ -0,0 +1,323 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Arrays;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import dataneat.base.BaseNeat;
+import dataneat.genome.NeatChromosome;
+import dataneat.transferFunction.SigmoidFunction;
+import dataneat.transferFunction.TransferFunctions;
+import dataneat.utils.BufferPool;
+import dataneat.utils.PropertiesHolder;
+
+public class PrimitiveNetwork extends BaseNeat {
+	// evaluates a NetworkPlan with plain double arrays instead of ND4J. For
+	// networks of a handful of neurons the JNI overhead of the ND4J calls
+	// dominates the actual math, so small networks are cheaper to run here.
+	// The state is column major, neuron i of sample s is at i * batchSize + s,
+	// so every link is a single loop over contiguous samples. The state is
+	// borrowed from the thread's BufferPool while computing
+
+	private static final long serialVersionUID = 1L;
+	private static final String STABIL_THRESH = "stabilizationDelta";
+	private static final String SPARSE_DENSITY = "sparseInputDensity";
+	private static final String PER_SAMPLE = "perSampleConvergence";
+	private NetworkPlan plan;
+	private double[] weights;
+	private double stabilDelta = 0.01, sparseDensity = 0.25;
+	private boolean perSample = false;
+	private SigmoidFunction sigmoid;
+	private int batchSize = 0;
+	// input and bias links read the caller's columns, or its sparse form,
+	// instead of a copy in the state
+	private double[] inputs;
+	private SparseInput sparse;
+	private double[] state;
+	// only used on the previous timestep, holds the next iteration
+	private double[] next;
+	// column major, output i of sample s at i * batchSize + s
+	private double[] outputs;
+	// when recording, the outputs of the computed neurons are kept as well,
+	// computed neuron k of sample s at k * batchSize + s
+	private boolean recording = false;
+	private double[] values;
+
+	public PrimitiveNetwork() {}
+
+	public PrimitiveNetwork(NeatChromosome chrom, PropertiesHolder p) {
+		this(PlanCache.getPlanCache().getPlan(chrom), chrom, p);
+	}
+
+	public PrimitiveNetwork(NetworkPlan plan, NeatChromosome chrom, PropertiesHolder p) {
+		this(plan, plan.extractWeights(chrom), p);
+	}
+
+	public PrimitiveNetwork(NetworkPlan plan, double[] weights, PropertiesHolder p) {
+		super(p);
+		this.plan = plan;
+		this.weights = weights;
+		stabilDelta = Double.parseDouble(getParams().getProperty(STABIL_THRESH));
+		sparseDensity = Double.parseDouble(getParams().getProperty(SPARSE_DENSITY));
+		perSample = Integer.parseInt(getParams().getProperty(PER_SAMPLE)) == 1;
+		sigmoid = TransferFunctions.sigmoid(p);
+	}
+
+	// shape = (batchSize,numInputs)
+	public void computeNetCurrentTimestep(INDArray inputs) {
+		computeNetCurrentTimestep(PreparedInput.of(inputs));
+	}
+
+	public void computeNetCurrentTimestep(PreparedInput input) {
+		computeNetCurrentTimestep(input.getColumns(), sparse(input), input.getBatchSize());
+	}
+
+	// column major inputs, input i of sample s at i * batchSize + s
+	public void computeNetCurrentTimestep(double[] inputs, int batchSize) {
+		computeNetCurrentTimestep(inputs, null, batchSize);
+	}
+
+	private void computeNetCurrentTimestep(double[] inputs, SparseInput sparse, int batchSize) {
+		// same as Network: neurons are evaluated in order, and links from
+		// neurons that have not been evaluated yet read zero
+		loadInputs(inputs, sparse, batchSize);
+		int[] forwardEnd = plan.getForwardEnd();
+
+		for (int k = 0; k < plan.getNumComputed(); k++) {
+			activate(state, state, k, forwardEnd[k]);
+		}
+
+		collectOutputs();
+	}
+
+	public void computeNetCurrentTimestep(PreparedInput input, Activations base, boolean[] changed) {
+		// same result as a full evaluation, starting from the activations of
+		// a close relative on the same inputs and only recomputing the neurons
+		// that changed, see Activations.changedNeurons
+		loadInputs(input.getColumns(), sparse(input), input.getBatchSize());
+		int[] forwardEnd = plan.getForwardEnd();
+		System.arraycopy(base.getValues(), 0, state, plan.getFirstComputed() * batchSize,
+				plan.getNumComputed() * batchSize);
+
+		for (int k = 0; k < plan.getNumComputed(); k++) {
+			if (changed[k]) {
+				activate(state, state, k, forwardEnd[k]);
+			}
+		}
+
+		collectOutputs();
+	}
+
+	// shape = (batchSize,numInputs)
+	public void computeNetPrevTimestep(INDArray inputs) {
+		computeNetPrevTimestep(PreparedInput.of(inputs));
+	}
+
+	public void computeNetPrevTimestep(PreparedInput input) {
+		computeNetPrevTimestep(input.getColumns(), sparse(input), input.getBatchSize());
+	}
+
+	public void computeNetPrevTimestep(double[] inputs, int batchSize) {
+		computeNetPrevTimestep(inputs, null, batchSize);
+	}
+
+	private void computeNetPrevTimestep(double[] inputs, SparseInput sparse, int batchSize) {
+		// same as Network: every neuron reads the previous output of its
+		// sources, until no neuron changes by more than the stabilization
+		// delta on any sample or the network has been flushed size * 3 times.
+		// With perSampleConvergence each sample stops once none of its own
+		// neurons changes by that much, and keeps its values from then on
+		loadInputs(inputs, sparse, batchSize);
+		int first = plan.getFirstComputed();
+		int[] linkStart = plan.getLinkStart();
+
+		if (plan.isAcyclic()) {
+			// the iteration converges to a single pass in topological order
+			for (int k : plan.getTopologicalOrder()) {
+				activate(state, state, k, linkStart[k + 1]);
+			}
+			collectOutputs();
+			return;
+		}
+
+		next = BufferPool.getBufferPool().doubles(BufferPool.NEXT, plan.size() * batchSize);
+		boolean stable = false;
+		int count = 0;
+		// per sample, whether it has stopped and whether it moved this pass
+		boolean[] settled = perSample ? new boolean[batchSize] : null;
+		boolean[] moving = perSample ? new boolean[batchSize] : null;
+
+		while (!stable && count < plan.getMaxPasses()) {
+			stable = true;
+
+			for (int k = 0; k < plan.getNumComputed(); k++) {
+				int to = (first + k) * batchSize;
+				activate(state, next, k, linkStart[k + 1]);
+
+				if (perSample) {
+					for (int s = 0; s < batchSize; s++) {
+						if (settled[s]) {
+							next[to + s] = state[to + s];
+						} else if (Math.abs(next[to + s] - state[to + s]) >= stabilDelta) {
+							moving[s] = true;
+						}
+					}
+					continue;
+				}
+
+				for (int s = to; stable && s < to + batchSize; s++) {
+					if (Math.abs(next[s] - state[s]) >= stabilDelta) {
+						stable = false;
+					}
+				}
+			}
+
+			if (perSample) {
+				for (int s = 0; s < batchSize; s++) {
+					settled[s] |= !moving[s];
+					stable &= settled[s];
+					moving[s] = false;
+				}
+			}
+
+			double[] temp = state;
+			state = next;
+			next = temp;
+			count++;
+		}
+
+		collectOutputs();
+	}
+
+	private SparseInput sparse(PreparedInput input) {
+		return input.getDensity() <= sparseDensity ? input.getSparse() : null;
+	}
+
+	private void loadInputs(double[] inputs, SparseInput sparse, int batchSize) {
+		this.batchSize = batchSize;
+		this.inputs = inputs;
+		this.sparse = sparse;
+		// the input and bias part of the state is left unused
+		int length = plan.size() * batchSize;
+		state = BufferPool.getBufferPool().doubles(BufferPool.STATE, length);
+		Arrays.fill(state, plan.getFirstComputed() * batchSize, length, 0.0);
+	}
+
+	private void activate(double[] from, double[] into, int k, int end) {
+		// weighted sum of the sources of computed neuron k, one contiguous loop
+		// per link, with the sigmoid applied in the loop of the last link. The
+		// sum starts at the bias weight. Links from sparse inputs only visit
+		// the samples where the input is nonzero
+		int to = (plan.getFirstComputed() + k) * batchSize;
+		int bias = plan.getBiasLinks()[k];
+		int[] linkSource = plan.getLinkSource();
+		Arrays.fill(into, to, to + batchSize, bias < 0 ? 0.0 : weights[bias]);
+		int numInputs = plan.getNumInputs(), j = plan.getLinkStart()[k];
+
+		// sources are sorted, so inputs come first
+		for (; j < end && linkSource[j] < numInputs; j++) {
+			double w = weights[j];
+
+			if (sparse != null) {
+				int[] samples = sparse.getSamples();
+				double[] values = sparse.getValues();
+
+				for (int e = sparse.getStart()[linkSource[j]]; e < sparse.getStart()[linkSource[j] + 1]; e++) {
+					into[to + samples[e]] += w * values[e];
+				}
+			} else {
+				int src = linkSource[j] * batchSize;
+
+				for (int s = 0; s < batchSize; s++) {
+					into[to + s] += w * inputs[src + s];
+				}
+			}
+		}
+
+		// the bias link comes right after the inputs
+		if (j == bias) {
+			j++;
+		}
+
+		if (j == end) {
+			sigmoid.apply(into, to, to + batchSize);
+			return;
+		}
+
+		for (; j < end - 1; j++) {
+			double w = weights[j];
+			int src = linkSource[j] * batchSize;
+
+			for (int s = 0; s < batchSize; s++) {
+				into[to + s] += w * from[src + s];
+			}
+		}
+
+		double w = weights[end - 1];
+		int src = linkSource[end - 1] * batchSize;
+
+		for (int s = 0; s < batchSize; s++) {
+			into[to + s] = sigmoid.compute(into[to + s] + w * from[src + s]);
+		}
+	}
+
+	private void collectOutputs() {
+		// the pooled state goes back to the thread once the outputs are out
+		int[] outputIndices = plan.getOutputIndices();
+		outputs = new double[outputIndices.length * batchSize];
+
+		for (int i = 0; i < outputIndices.length; i++) {
+			System.arraycopy(state, outputIndices[i] * batchSize, outputs, i * batchSize, batchSize);
+		}
+
+		if (recording) {
+			values = Arrays.copyOfRange(state, plan.getFirstComputed() * batchSize, plan.size() * batchSize);
+		}
+
+		state = next = inputs = null;
+		sparse = null;
+	}
+
+	public INDArray getOutput() {
+		// shape = (batchSize,numOutputs)
+		return Nd4j.create(outputs, new int[] { batchSize, plan.getNumOutputs() }, 'f');
+	}
+
+	public double[] getOutputColumns() {
+		// column major, output i of sample s at i * batchSize + s
+		return outputs;
+	}
+
+	public NetworkPlan getPlan() {
+		return plan;
+	}
+
+	public double[] getWeights() {
+		return weights;
+	}
+
+	public void setRecording(boolean recording) {
+		this.recording = recording;
+	}
+
+	public double[] getValues() {
+		// null unless recording
+		return values;
+	}
+}
@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Arrays;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import dataneat.base.BaseNeat;
+import dataneat.genome.NeatChromosome;
+import dataneat.transferFunction.SigmoidFunction;
+import dataneat.transferFunction.TransferFunctions;
+import dataneat.utils.BufferPool;
+import dataneat.utils.PropertiesHolder;
+
+public class RecurrentNetwork extends BaseNeat {
+	// previous timestep evaluator that relaxes the network as the sparse state
+	// update s' = f(W * s + U * x). The input and bias part U * x never changes
+	// while relaxing, so it is summed once up front, straight from the
+	// prepared feature columns (only over the nonzero samples of each input
+	// when the features are sparse), and every pass only runs the links
+	// between computed neurons. Like Network the batch relaxes until no
+	// neuron of any sample moves by the stabilization delta or more, with
+	// perSampleConvergence each sample stops as soon as its own neurons are
+	// stable and is not computed again. The state only holds the computed
+	// neurons, is double buffered, sample major, and borrowed from the
+	// thread's BufferPool so relaxing does not allocate
+
+	private static final long serialVersionUID = 1L;
+	private static final String STABIL_THRESH = "stabilizationDelta";
+	private static final String SPARSE_DENSITY = "sparseInputDensity";
+	private static final String PER_SAMPLE = "perSampleConvergence";
+	private NetworkPlan plan;
+	private double[] weights;
+	private double stabilDelta = 0.01, sparseDensity = 0.25;
+	private boolean perSample = false;
+	private SigmoidFunction sigmoid;
+	// start in linkSource of the links of computed neuron k coming from other
+	// computed neurons, the ones before it come from inputs and the bias
+	private int[] hiddenStart;
+	// state index of the source of every link between computed neurons
+	private int[] hiddenSource;
+	private int batchSize = 0, passes = 0;
+
+	// computed neuron k of sample s at s * numComputed + k
+	private double[] state, next;
+	// U * x of computed neuron k of sample s at k * batchSize + s
+	private double[] inputSums;
+	// samples still relaxing, the first numActive entries are valid
+	private int[] active;
+	// column major, output i of sample s at i * batchSize + s
+	private double[] outputs;
+
+	public RecurrentNetwork() {}
+
+	public RecurrentNetwork(NeatChromosome chrom, PropertiesHolder p) {
+		this(PlanCache.getPlanCache().getPlan(chrom), chrom, p);
+	}
+
+	public RecurrentNetwork(NetworkPlan plan, NeatChromosome chrom, PropertiesHolder p) {
+		this(plan, plan.extractWeights(chrom), p);
+	}
+
+	public RecurrentNetwork(NetworkPlan plan, double[] weights, PropertiesHolder p) {
+		super(p);
+		this.plan = plan;
+		this.weights = weights;
+		stabilDelta = Double.parseDouble(getParams().getProperty(STABIL_THRESH));
+		sparseDensity = Double.parseDouble(getParams().getProperty(SPARSE_DENSITY));
+		perSample = Integer.parseInt(getParams().getProperty(PER_SAMPLE)) == 1;
+		sigmoid = TransferFunctions.sigmoid(p);
+
+		int first = plan.getFirstComputed();
+		int[] linkStart = plan.getLinkStart();
+		int[] linkSource = plan.getLinkSource();
+		hiddenStart = new int[plan.getNumComputed()];
+		hiddenSource = new int[plan.getNumLinks()];
+
+		for (int k = 0; k < hiddenStart.length; k++) {
+			int j = linkStart[k];
+			while (j < linkStart[k + 1] && linkSource[j] < first) {
+				j++;
+			}
+			hiddenStart[k] = j;
+
+			for (; j < linkStart[k + 1]; j++) {
+				hiddenSource[j] = linkSource[j] - first;
+			}
+		}
+	}
+
+	// shape = (batchSize,numInputs)
+	public void computeNetPrevTimestep(INDArray inputs) {
+		computeNetPrevTimestep(PreparedInput.of(inputs));
+	}
+
+	public void computeNetPrevTimestep(PreparedInput input) {
+		SparseInput sparse = input.getDensity() <= sparseDensity ? input.getSparse() : null;
+		computeNetPrevTimestep(input.getColumns(), sparse, input.getBatchSize());
+	}
+
+	// column major inputs, input i of sample s at i * batchSize + s
+	public void computeNetPrevTimestep(double[] inputs, int batchSize) {
+		computeNetPrevTimestep(inputs, null, batchSize);
+	}
+
+	private void computeNetPrevTimestep(double[] inputs, SparseInput sparse, int batchSize) {
+		allocate(batchSize);
+
+		int numComputed = plan.getNumComputed();
+		int[] linkStart = plan.getLinkStart();
+
+		sumInputs(inputs, sparse);
+		Arrays.fill(state, 0, numComputed * batchSize, 0.0);
+
+		for (int s = 0; s < batchSize; s++) {
+			active[s] = s;
+		}
+
+		if (plan.isAcyclic()) {
+			relaxAcyclic();
+			collectOutputs();
+			return;
+		}
+
+		int numActive = batchSize;
+		passes = 0;
+
+		while (numActive > 0 && passes < plan.getMaxPasses()) {
+			int stillActive = 0;
+			boolean moving = false;
+
+			for (int a = 0; a < numActive; a++) {
+				int s = active[a];
+				int offset = s * numComputed;
+				boolean stable = true;
+
+				for (int k = 0; k < numComputed; k++) {
+					double sum = inputSums[k * batchSize + s];
+					for (int j = hiddenStart[k]; j < linkStart[k + 1]; j++) {
+						sum += weights[j] * state[offset + hiddenSource[j]];
+					}
+
+					double out = sigmoid.compute(sum);
+					int n = offset + k;
+
+					if (Math.abs(out - state[n]) >= stabilDelta) {
+						stable = false;
+					}
+					next[n] = out;
+				}
+
+				if (stable && perSample) {
+					// keep the final values in both buffers, the sample is
+					// not touched again
+					System.arraycopy(next, offset, state, offset, numComputed);
+				} else {
+					active[stillActive++] = s;
+					moving |= !stable;
+				}
+			}
+
+			double[] temp = state;
+			state = next;
+			next = temp;
+			numActive = moving ? stillActive : 0;
+			passes++;
+		}
+
+		collectOutputs();
+	}
+
+	private void sumInputs(double[] inputs, SparseInput sparse) {
+		// U * x of every computed neuron, starting at its bias weight, one
+		// contiguous loop per input link, or only over the samples where the
+		// input is nonzero when sparse
+		int[] linkStart = plan.getLinkStart();
+		int[] linkSource = plan.getLinkSource();
+		int[] biasLinks = plan.getBiasLinks();
+
+		for (int k = 0; k < plan.getNumComputed(); k++) {
+			int to = k * batchSize;
+			Arrays.fill(inputSums, to, to + batchSize, biasLinks[k] < 0 ? 0.0 : weights[biasLinks[k]]);
+			// the bias link is the last one before the hidden links
+			int end = biasLinks[k] < 0 ? hiddenStart[k] : biasLinks[k];
+
+			for (int j = linkStart[k]; j < end; j++) {
+				double w = weights[j];
+				int src = linkSource[j];
+
+				if (sparse != null) {
+					int[] samples = sparse.getSamples();
+					double[] values = sparse.getValues();
+
+					for (int e = sparse.getStart()[src]; e < sparse.getStart()[src + 1]; e++) {
+						inputSums[to + samples[e]] += w * values[e];
+					}
+				} else {
+					int from = src * batchSize;
+
+					for (int s = 0; s < batchSize; s++) {
+						inputSums[to + s] += w * inputs[from + s];
+					}
+				}
+			}
+		}
+	}
+
+	private void relaxAcyclic() {
+		// without cycles relaxing converges to a single pass in topological
+		// order, so every neuron is computed once from final values
+		int numComputed = plan.getNumComputed();
+		int[] linkStart = plan.getLinkStart();
+		int[] order = plan.getTopologicalOrder();
+
+		for (int s = 0; s < batchSize; s++) {
+			int offset = s * numComputed;
+
+			for (int k : order) {
+				double sum = inputSums[k * batchSize + s];
+				for (int j = hiddenStart[k]; j < linkStart[k + 1]; j++) {
+					sum += weights[j] * state[offset + hiddenSource[j]];
+				}
+				state[offset + k] = sigmoid.compute(sum);
+			}
+		}
+
+		passes = 1;
+	}
+
+	private void allocate(int batchSize) {
+		this.batchSize = batchSize;
+		int length = plan.getNumComputed() * batchSize;
+		BufferPool pool = BufferPool.getBufferPool();
+
+		state = pool.doubles(BufferPool.STATE, length);
+		next = pool.doubles(BufferPool.NEXT, length);
+		inputSums = pool.doubles(BufferPool.SUMS, length);
+		active = pool.ints(batchSize);
+	}
+
+	private void collectOutputs() {
+		// the pooled buffers go back to the thread once the outputs are out
+		int numComputed = plan.getNumComputed(), first = plan.getFirstComputed();
+		int[] outputIndices = plan.getOutputIndices();
+		outputs = new double[outputIndices.length * batchSize];
+
+		for (int i = 0; i < outputIndices.length; i++) {
+			for (int s = 0; s < batchSize; s++) {
+				outputs[i * batchSize + s] = state[s * numComputed + outputIndices[i] - first];
+			}
+		}
+
+		state = next = inputSums = null;
+		active = null;
+	}
+
+	public INDArray getOutput() {
+		// shape = (batchSize,numOutputs)
+		return Nd4j.create(outputs, new int[] { batchSize, plan.getNumOutputs() }, 'f');
+	}
+
+	public double[] getOutputColumns() {
+		// column major, output i of sample s at i * batchSize + s
+		return outputs;
+	}
+
+	public int getPasses() {
+		// passes over the network the slowest sample needed
+		return passes;
+	}
+
+	public NetworkPlan getPlan() {
+		return plan;
+	}
+
+	public double[] getWeights() {
+		return weights;
+	}
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+public class SparseInput {
+	// the nonzero entries of a feature matrix compressed by input, that is the
+	// CSR form of its transpose. The nonzero samples of input i are
+	// samples[start[i]] up to samples[start[i + 1]], in increasing order, with
+	// their values alongside. Links from an input then only visit the samples
+	// where it is nonzero instead of the whole column
+
+	private final int[] start, samples;
+	private final double[] values;
+
+	// column major features, input i of sample s at i * batchSize + s
+	public SparseInput(double[] columns, int batchSize, int numInputs) {
+		int nonzeros = 0;
+
+		for (double v : columns) {
+			if (v != 0.0) {
+				nonzeros++;
+			}
+		}
+
+		start = new int[numInputs + 1];
+		samples = new int[nonzeros];
+		values = new double[nonzeros];
+		int next = 0;
+
+		for (int i = 0; i < numInputs; i++) {
+			start[i] = next;
+
+			for (int s = 0; s < batchSize; s++) {
+				double v = columns[i * batchSize + s];
+
+				if (v != 0.0) {
+					samples[next] = s;
+					values[next++] = v;
+				}
+			}
+		}
+
+		start[numInputs] = next;
+	}
+
+	public int[] getStart() {
+		return start;
+	}
+
+	public int[] getSamples() {
+		return samples;
+	}
+
+	public double[] getValues() {
+		return values;
+	}
+
+	public int getNonzeros() {
+		return samples.length;
+	}
+}
@@ -0,0 +1,76 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import java.util.Arrays;
+
+import dataneat.genome.LinkDB;
+import dataneat.genome.LinkGene;
+import dataneat.genome.NeatChromosome;
+import dataneat.genome.NeuronDB;
+
+public class TopologyKey {
+	// structural key of a chromosome: its neuron ids in NeuronDB order and the
+	// set of enabled links, ignoring weights. Chromosomes with equal keys get
+	// identical NetworkPlans, and it is much cheaper to work out than a plan
+
+	private final int[] neuronIds;
+	// (fromId << 32) | toId of every enabled link, sorted
+	private final long[] links;
+	private final int hash;
+
+	public TopologyKey(NeatChromosome chrom) {
+		NeuronDB neurons = chrom.getNeurons();
+		LinkDB linkDB = chrom.getLinks();
+		neuronIds = new int[neurons.sizeWithBias()];
+
+		for (int i = 0; i < neuronIds.length; i++) {
+			neuronIds[i] = neurons.getByIndex(i).getID();
+		}
+
+		long[] enabled = new long[linkDB.size()];
+		int count = 0;
+
+		for (int i = 0; i < linkDB.size(); i++) {
+			LinkGene l = linkDB.getByIndex(i);
+			if (l.isEnabled()) {
+				enabled[count++] = ((long) l.getFromNeuronID() << 32) | (l.getToNeuronID() & 0xffffffffL);
+			}
+		}
+
+		links = Arrays.copyOf(enabled, count);
+		Arrays.sort(links);
+		hash = 31 * Arrays.hashCode(neuronIds) + Arrays.hashCode(links);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj) {
+			return true;
+		}
+		if (!(obj instanceof TopologyKey)) {
+			return false;
+		}
+
+		TopologyKey other = (TopologyKey) obj;
+		return hash == other.hash && Arrays.equals(neuronIds, other.neuronIds) && Arrays.equals(links, other.links);
+	}
+}
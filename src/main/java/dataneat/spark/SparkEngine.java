@@ -20,13 +20,13 @@ import org.deeplearning4j.eval.Evaluation;
 import org.graphstream.ui.view.Viewer;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
-import org.nd4j.linalg.factory.Nd4j;
 
 import dataneat.base.BaseNeat;
+import dataneat.engine.PendingTest;
 import dataneat.evolution.Population;
 import dataneat.genome.NeatChromosome;
 import dataneat.monitor.RunData;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.RecurrentNetwork;
 import dataneat.spark.function1.SparkNetworkAccuracyCurr;
 import dataneat.spark.function1.SparkNetworkOutCurr;
 import dataneat.spark.function2.SparkEvaluationFunction2;
@@ -42,16 +42,19 @@ public class SparkEngine extends BaseNeat {
 	private static final String COMPLEXITY_THRESH = "complexityThresh";
 	private static final String STABIL_THRESH = "stabilizationDelta";
 	private static final String BATCH_SIZE = "batchSize";
+	private static final String ASYNC_TEST = "asyncTest";
 	
 	private double stabilDelta = 0.01;
 	private Integer batchSize = 50;
 	private INDArray stabilMatrix;
 	private double mpc = 0.0, prevMpc = 0.0, mpcBaseline = 0.0, complexityThresh = 0.0;	
 	private RunData runData;
-	private boolean prune = false;
+	private boolean prune = false, asyncTest = false;
 	private int testDelay = 0, roundsSinceTestUpdate = 0, iteration = 0, numInputs = 0, numOutputs = 0,
 			consoleDelay = 10, sinceConsoleUpdate = 0, mpcCounter = 0, mpcThresh = 3;
 	private SparkTestFitnessOperator testFitnessOperator;
+	// test scores still being computed in the background, if any
+	private transient PendingTest pendingTest;
 	private SparkSupervisedEvolver evolver;
 	private Population pop;
 
@@ -67,6 +70,7 @@ public class SparkEngine extends BaseNeat {
 		consoleDelay = Integer.parseInt(getParams().getProperty(CONSOLE_DELAY));		
 		complexityThresh = Double.parseDouble(getParams().getProperty(COMPLEXITY_THRESH));		
 		stabilDelta = Double.parseDouble(getParams().getProperty(STABIL_THRESH));
+		asyncTest = Integer.parseInt(getParams().getProperty(ASYNC_TEST)) == 1;
 		testFitnessOperator = new SparkTestFitnessOperator(getHolder());
 		this.numInputs = numInputs;
 		this.numOutputs = numOutputs;
@@ -105,11 +109,16 @@ public class SparkEngine extends BaseNeat {
 			System.out.println("MPC: " + mpc);
 			mpcCheck();
 		}
+
+		mergeTest(true);
 	}
 
 	public void run(SparkSupervisedEvolver evolver, Population pop, JavaRDD<DataSet> train, JavaRDD<DataSet> test) {
 		// does a single round of evolution
 
+		// take in the test scores of an earlier round if they are done
+		mergeTest(false);
+
 		// do some pre evolution
 		evolver.preEvolution(pop, train);
 
@@ -193,7 +202,14 @@ public class SparkEngine extends BaseNeat {
 
 	private void updateTestdataInfo(Population pop, JavaRDD<DataSet> test) {
 
-		if (roundsSinceTestUpdate >= testDelay) {
+		if (roundsSinceTestUpdate >= testDelay && asyncTest) {
+			// the test jobs run on the cluster while evolution goes on, one
+			// round at a time
+			roundsSinceTestUpdate = 0;
+			mergeTest(true);
+			pendingTest = PendingTest.submit(pop.getChromosomes(), runData,
+					snapshot -> testFitnessOperator.operate(snapshot, test));
+		} else if (roundsSinceTestUpdate >= testDelay) {
 			roundsSinceTestUpdate = 0;
 			testFitnessOperator.operate(pop.getChromosomes(), test);
 			pop.updateTestBest();
@@ -202,16 +218,25 @@ public class SparkEngine extends BaseNeat {
 		}
 	}
 
+	private void mergeTest(boolean wait) {
+		// hands pending test scores to the monitor and the run data, waiting
+		// for them if asked to
+		if (pendingTest != null && (wait || pendingTest.isDone())) {
+			pendingTest.merge(pop, runData);
+			pendingTest = null;
+		}
+	}
+
 	public SparkEngine reset() {
 		iteration = 0;
 		return this;
 	}
 
 	public void tuningReset() {
+		mergeTest(true);
 		reset();
 		rebuildPop(numInputs, numOutputs);
-		long seed = RandGen.getSeed();
-		RandGen.rand.setSeed(seed);
+		RandGen.reseed();
 		roundsSinceTestUpdate = 0;
 	}
 
@@ -228,6 +253,7 @@ public class SparkEngine extends BaseNeat {
 	}
 
 	public JavaRDD<INDArray> generatePredictions(JavaRDD<DataSet> inputs, String mode) {
+		mergeTest(true);
 		NeatChromosome chrom = null;
 		switch (mode) {
 		case "train":
@@ -246,6 +272,7 @@ public class SparkEngine extends BaseNeat {
 	}
 	
 	public Evaluation combinedEval(JavaRDD<DataSet> inputs, String mode) {
+		mergeTest(true);
 		NeatChromosome chrom = null;
 		switch (mode) {
 		case "train":
@@ -267,6 +294,7 @@ public class SparkEngine extends BaseNeat {
 	}
 
 	public void writePredictions(INDArray inputs, String mode, String file) {
+		mergeTest(true);
 		NeatChromosome chrom = null;
 		switch (mode) {
 		case "train":
@@ -281,9 +309,7 @@ public class SparkEngine extends BaseNeat {
 
 		batchSize = inputs.rows();
 		getParams().setProperty(BATCH_SIZE, Integer.toString(batchSize));
-		stabilMatrix = Nd4j.zeros(batchSize, 1);
-		stabilMatrix.addi(stabilDelta);
-		Network net = new Network(chrom, getHolder(), stabilMatrix);
+		RecurrentNetwork net = new RecurrentNetwork(chrom, getHolder());
 		net.computeNetPrevTimestep(inputs);
 		IO.addToFile(net.getOutput().toString(), file);
 	}
@@ -303,10 +329,12 @@ public class SparkEngine extends BaseNeat {
 	}
 
 	public void displayBestTestNetwork() {
+		mergeTest(true);
 		pop.getTestBest().buildGraph().display();
 	}
 
 	public RunData getRunData() {
+		mergeTest(true);
 		return runData;
 	}
 
@@ -315,6 +343,7 @@ public class SparkEngine extends BaseNeat {
 	}
 
 	public Population getPop() {
+		mergeTest(true);
 		return pop;
 	}
 	
@@ -16,6 +16,7 @@
 package dataneat.spark;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.spark.api.java.JavaRDD;
@@ -33,9 +34,12 @@ import dataneat.operators.MutationOperator;
 import dataneat.operators.NeatCrossoverOperator;
 import dataneat.operators.RemoveLinkOperator;
 import dataneat.operators.RemoveNodeOperator;
+import dataneat.operators.Reproduction;
 import dataneat.operators.SpeciationOperator;
 import dataneat.speciation.Species;
 import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
 
 public class SparkSupervisedEvolver extends BaseNeat implements SparkTargetEvolver {
 
@@ -109,47 +113,17 @@ public class SparkSupervisedEvolver extends BaseNeat implements SparkTargetEvolv
 		// alive in the species lists
 		pop.clearChroms();
 
-		List<NeatChromosome> offspringList;
-		int numOffspring = 0;
+		// every step draws from a child of the generation's stream
+		RandomStream random = RandGen.nextGeneration();
+		reproduce(pop, true, random.split(0));
 
-		for (Species s : pop.getSpeciesDB().getSpeciesList()) {
-
-			// number of offspring to produce
-			numOffspring = s.getNumOffspring(pop.getPopTargetSize());
-
-			if (numOffspring == 0) {
-				// no offspring requested, species dies out
-				continue;
-			}
-
-			// species lists won't exist without at least 1 member, and if there
-			// are 2 members or more, we are good for crossover, so the only
-			// edge case is 1
-			if (s.size() == 1) {
-				// only one member of this species, we can't do crossover
-				// without at least 2 parents, so initiate cloning instead of
-				// crossover
-				offspringList = cloner.operate(s.getMembers().get(0), numOffspring);
-
-			} else {
-
-				s.selectionPrep();
-				offspringList = crossOver.operate(s, numOffspring);
-			}
-
-			// add offspring to the new generation
-			for (NeatChromosome chrom : offspringList) {
-				pop.add(chrom);
-			}
-		}
-
-		pop.correctSize();
+		pop.correctSize(random.split(1));
 
 		// operate on new population
 
-		for (MutationOperator op : evolvingOperators) {
+		for (int i = 0; i < evolvingOperators.size(); i++) {
 
-			op.operate(pop.getChromosomes());
+			evolvingOperators.get(i).operate(pop.getChromosomes(), random.split(2 + i));
 		}
 
 		// add elites to next gen
@@ -166,42 +140,72 @@ public class SparkSupervisedEvolver extends BaseNeat implements SparkTargetEvolv
 		// alive in the species lists
 		pop.clearChroms();
 
-		List<NeatChromosome> offspringList;
-		int numOffspring = 0;
+		RandomStream random = RandGen.nextGeneration();
+		reproduce(pop, false, random.split(0));
+
+		pop.correctSize(random.split(1));
+
+		// operate on new population
+
+		for (int i = 0; i < pruningOperators.size(); i++) {
+			pruningOperators.get(i).operate(pop.getChromosomes(), random.split(2 + i));
+		}
 
-		for (Species s : pop.getSpeciesDB().getSpeciesList()) {
+		// add elites to next gen
+		pop.addElites();
+	}
 
+	private void reproduce(Population pop, boolean crossover, RandomStream random) {
+		// every species makes its offspring in a task of its own, from child
+		// i of random, see Reproduction, and they join the new generation in
+		// species order
+		List<Species> speciesList = pop.getSpeciesDB().getSpeciesList();
+		int[] numOffspring = new int[speciesList.size()];
+		List<List<NeatChromosome>> offspring = new ArrayList<List<NeatChromosome>>(
+				Collections.nCopies(speciesList.size(), null));
+
+		for (int i = 0; i < numOffspring.length; i++) {
 			// number of offspring to produce
-			numOffspring = s.getNumOffspring(pop.getPopTargetSize());
+			numOffspring[i] = speciesList.get(i).getNumOffspring(pop.getPopTargetSize());
+		}
 
-			if (numOffspring == 0) {
-				// no offspring requested, species dies out
+		Reproduction.forEach(random, speciesList.size(),
+				i -> numOffspring[i] == 0 ? 0 : numOffspring[i] * speciesList.get(i).getMembers().get(0).getGenomeSize(),
+				(stream, i) -> {
+					Species s = speciesList.get(i);
+
+					if (numOffspring[i] == 0) {
+						// no offspring requested, species dies out
+						return;
+					}
+
+					// species lists won't exist without at least 1 member, and if
+					// there are 2 members or more, we are good for crossover, so
+					// the only edge case is 1
+					if (s.size() == 1) {
+						// only one member of this species, we can't do crossover
+						// without at least 2 parents, so initiate cloning instead
+						// of crossover
+						offspring.set(i, cloner.operate(s.getMembers().get(0), numOffspring[i]));
+					} else if (crossover) {
+						s.selectionPrep();
+						offspring.set(i, crossOver.operate(s, numOffspring[i], stream));
+					} else {
+						offspring.set(i, asexual.operate(s.getMembers(), numOffspring[i], stream));
+					}
+				});
+
+		for (int i = 0; i < offspring.size(); i++) {
+			if (offspring.get(i) == null) {
 				continue;
 			}
 
-			// species lists won't exist without at least 1 member
-			if (s.size() == 1) {
-				// only one member of this species, just clone				
-				offspringList = cloner.operate(s.getMembers().get(0), numOffspring);
-			} else {				
-				offspringList = asexual.operate(s.getMembers(), numOffspring);
-			}
-
-			// add offspring to the new generation
-			for (NeatChromosome chrom : offspringList) {
+			// add offspring to the new generation, with ids in that order. A
+			// clone hands back its parent, which keeps its own
+			for (NeatChromosome chrom : offspring.get(i)) {
+				chrom.number();
 				pop.add(chrom);
 			}
 		}
-
-		pop.correctSize();
-
-		// operate on new population
-
-		for (MutationOperator op : pruningOperators) {
-			op.operate(pop.getChromosomes());
-		}
-
-		// add elites to next gen
-		pop.addElites();
 	}
 }
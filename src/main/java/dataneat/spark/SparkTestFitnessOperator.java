@@ -15,8 +15,12 @@
  *******************************************************************************/
 package dataneat.spark;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
 
+import org.apache.spark.api.java.JavaFutureAction;
 import org.apache.spark.api.java.JavaRDD;
 import org.nd4j.linalg.dataset.DataSet;
 
@@ -56,16 +60,41 @@ public class SparkTestFitnessOperator extends BaseNeat implements SparkTargetFit
 			return;
 		}		
 		count = data.count();
-		
-		population.parallelStream().forEach(chrom -> evaluate(chrom, data));
+
+		// every chromosome is a job of its own, all of them are submitted
+		// before waiting on any so the cluster runs them side by side
+		List<JavaFutureAction<List<Double>>> jobs = new ArrayList<JavaFutureAction<List<Double>>>();
+		for (NeatChromosome chrom : population) {
+			jobs.add(submit(chrom, data));
+		}
+
+		for (int i = 0; i < population.size(); i++) {
+			double fitness = 0.0;
+			try {
+				for (double partial : jobs.get(i).get()) {
+					fitness += partial;
+				}
+			} catch (ExecutionException e) {
+				throw new RuntimeException(e.getCause());
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			population.get(i).setTestFitness(fitness / count);
+		}
 	}
 
-	private void evaluate(NeatChromosome chrom, JavaRDD<DataSet> data) {
+	private JavaFutureAction<List<Double>> submit(NeatChromosome chrom, JavaRDD<DataSet> data) {
+		// the scores are summed per partition, only the sums are collected
 		SparkNetworkEvalCurr eval = new SparkNetworkEvalCurr(getHolder());
 		eval.setChrom(chrom);		
 		eval.setFitnessFunction(fitnessFunction);
-		JavaRDD<Double> scoresDistributed = data.map(eval);
-		double fitness = scoresDistributed.reduce((a,b) -> a+b) / count ;		
-		chrom.setTestFitness(fitness);
+		return data.map(eval).mapPartitions(scores -> {
+			double sum = 0.0;
+			while (scores.hasNext()) {
+				sum += scores.next();
+			}
+			return Collections.singletonList(sum).iterator();
+		}).collectAsync();
 	}
 }
@@ -4,11 +4,10 @@ import org.apache.spark.api.java.function.Function;
 import org.deeplearning4j.eval.Evaluation;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
-import org.nd4j.linalg.factory.Nd4j;
 
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.CompiledNetwork;
 import dataneat.utils.PropertiesHolder;
 
 public class SparkNetworkAccuracyCurr extends BaseNeat implements Function<DataSet, Evaluation> {
@@ -27,9 +26,7 @@ public class SparkNetworkAccuracyCurr extends BaseNeat implements Function<DataS
 
 	@Override
 	public Evaluation call(DataSet data) throws Exception {
-		stabil = Nd4j.zeros(data.numExamples(), 1);
-		stabil.addi(stabilDelta);
-		Network net = new Network(chrom, getHolder(), stabil);
+		CompiledNetwork net = new CompiledNetwork(chrom, getHolder());
 		net.computeNetCurrentTimestep(data.getFeatures());
 		Evaluation eval = new Evaluation(data.getLabels().columns());
 		eval.eval(net.getOutput(), data.getLabels());
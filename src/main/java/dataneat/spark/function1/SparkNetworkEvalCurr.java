@@ -3,12 +3,11 @@ package dataneat.spark.function1;
 import org.apache.spark.api.java.function.Function;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
-import org.nd4j.linalg.factory.Nd4j;
 
 import dataneat.base.BaseNeat;
 import dataneat.fitness.TargetFitnessFunction;
 import dataneat.genome.NeatChromosome;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.CompiledNetwork;
 import dataneat.utils.PropertiesHolder;
 
 public class SparkNetworkEvalCurr extends BaseNeat implements Function<DataSet, Double> {
@@ -28,9 +27,7 @@ public class SparkNetworkEvalCurr extends BaseNeat implements Function<DataSet,
 
 	@Override
 	public Double call(DataSet data) throws Exception {
-		stabil = Nd4j.zeros(data.numExamples(), 1);
-		stabil.addi(stabilDelta);
-		Network net = new Network(chrom, getHolder(), stabil);
+		CompiledNetwork net = new CompiledNetwork(chrom, getHolder());
 		net.computeNetCurrentTimestep(data.getFeatures());
 		return fitnessFunction.computeFitness(data.getLabels(), net.getOutput());
 	}
@@ -3,11 +3,10 @@ package dataneat.spark.function1;
 import org.apache.spark.api.java.function.Function;
 import org.nd4j.linalg.api.ndarray.INDArray;
 import org.nd4j.linalg.dataset.DataSet;
-import org.nd4j.linalg.factory.Nd4j;
 
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
-import dataneat.phenotype.Network;
+import dataneat.phenotype.CompiledNetwork;
 import dataneat.utils.PropertiesHolder;
 
 public class SparkNetworkOutCurr extends BaseNeat implements Function<DataSet, INDArray> {
@@ -26,9 +25,7 @@ public class SparkNetworkOutCurr extends BaseNeat implements Function<DataSet, I
 
 	@Override
 	public INDArray call(DataSet data) throws Exception {
-		stabil = Nd4j.zeros(data.numExamples(), 1);
-		stabil.addi(stabilDelta);
-		Network net = new Network(chrom, getHolder(), stabil);
+		CompiledNetwork net = new CompiledNetwork(chrom, getHolder());
 		net.computeNetCurrentTimestep(data.getFeatures());
 		return net.getOutput();
 	}
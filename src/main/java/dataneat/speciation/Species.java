@@ -18,12 +18,12 @@ package dataneat.speciation;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Random;
 
 import dataneat.base.BaseNeat;
 import dataneat.genome.NeatChromosome;
 import dataneat.monitor.FitnessMonitor;
 import dataneat.utils.PropertiesHolder;
-import dataneat.utils.RandGen;
 
 public class Species extends BaseNeat {
 	private static final String SPECIES_DROPOFF = "speciesDropAge";
@@ -142,13 +142,13 @@ public class Species extends BaseNeat {
 				(chrom1, chrom2) -> Double.compare(chrom1.getAdjustedFitness(), chrom2.getAdjustedFitness())));
 	}
 
-	private NeatChromosome holdTournament(int size) {
-		NeatChromosome currentBest = getRandom();
+	private NeatChromosome holdTournament(int size, Random random) {
+		NeatChromosome currentBest = getRandom(random);
 		NeatChromosome challenger;
 
 		for (int i = 0; i < (size - 1); i++) {
 
-			challenger = getRandom();
+			challenger = getRandom(random);
 
 			if (challenger.getAdjustedFitness() > currentBest.getAdjustedFitness()) {
 				currentBest = challenger;
@@ -185,16 +185,16 @@ public class Species extends BaseNeat {
 		eligiblePop = members.subList(0, eligibleSize);
 	}
 	
-	public NeatChromosome generateSelection() {
+	public NeatChromosome generateSelection(Random random) {
 		switch (selectionType) {
 		case 0:
 			//truncation
-			return getTruncatedRandom();
+			return getTruncatedRandom(random);
 		case 1:
 			//tournament
-			return holdTournament(tournamentSize);
+			return holdTournament(tournamentSize, random);
 		default:
-			return getRandom();
+			return getRandom(random);
 		}		
 	}
 
@@ -246,13 +246,13 @@ public class Species extends BaseNeat {
 		this.stagnant = stagnant;
 	}
 
-	private NeatChromosome getRandom() {
-		int index = RandGen.rand.nextInt(members.size());
+	private NeatChromosome getRandom(Random random) {
+		int index = random.nextInt(members.size());
 		return members.get(index);
 	}
 	
-	private NeatChromosome getTruncatedRandom() {
-		int index = RandGen.rand.nextInt(eligiblePop.size());
+	private NeatChromosome getTruncatedRandom(Random random) {
+		int index = random.nextInt(eligiblePop.size());
 		return eligiblePop.get(index);
 	}
 }
@@ -0,0 +1,75 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.transferFunction;
+
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+public abstract class ApproximateSigmoid extends SigmoidFunction {
+	// cheaper stand ins for the sigmoid on single values, used by the
+	// evaluators that skip ND4J. ND4J arrays get the same approximation value
+	// by value, so a network scores the same whichever evaluator runs it.
+	// There is no native kernel for them, so on arrays they run in Java over
+	// the array's buffer, which is slower than ND4J's exact sigmoid
+
+	private volatile double maxError = -1.0;
+
+	@Override
+	public abstract double compute(double input);
+
+	@Override
+	public INDArray compute(INDArray input) {
+		return computeInPlace(input.dup());
+	}
+
+	@Override
+	public INDArray computeInPlace(INDArray input) {
+		// straight over the buffer when the array has one of its own, which
+		// the freshly computed sums the evaluators activate do. Views go
+		// element by element through their linear index, which is a lot
+		// slower still
+		DataBuffer data = input.data();
+		int length = input.length();
+
+		if (!input.isView() && data.length() == length) {
+			for (int i = 0; i < length; i++) {
+				data.put(i, compute(data.getDouble(i)));
+			}
+		} else {
+			for (int i = 0; i < length; i++) {
+				input.putScalar(i, compute(input.getDouble(i)));
+			}
+		}
+
+		return input;
+	}
+
+	@Override
+	public double getMaxError() {
+		// measured once on a fine grid, past +-20 every approximation here
+		// saturates like the sigmoid does
+		if (maxError < 0.0) {
+			double error = 0.0;
+
+			for (double x = -20.0; x <= 20.0; x += 0.0001) {
+				error = Math.max(error, Math.abs(compute(x) - 1.0 / (1.0 + Math.exp(-x))));
+			}
+			maxError = error;
+		}
+
+		return maxError;
+	}
+}
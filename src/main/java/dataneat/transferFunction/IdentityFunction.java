@@ -23,4 +23,15 @@ public class IdentityFunction implements TransferFunction {
 	public INDArray compute(INDArray input) {		
 		return input;
 	}
+
+	@Override
+	public double compute(double input) {
+		return input;
+	}
+
+	@Override
+	public void apply(double[] values, int from, int to) {}
+
+	@Override
+	public void apply(float[] values, int from, int to) {}
 }
@@ -0,0 +1,31 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.transferFunction;
+
+public class PiecewiseSigmoid extends ApproximateSigmoid {
+	// PLAN approximation, four linear segments per side with power of two
+	// slopes. The least accurate of the approximations and, on the JVM, no
+	// faster than the table. Concave for positive inputs, so a side is the
+	// smallest of its lines and no branch depends on the segment
+
+	@Override
+	public double compute(double input) {
+		double x = Math.abs(input);
+		double y = Math.min(Math.min(0.25 * x, 0.125 * x + 0.125), Math.min(0.03125 * x + 0.34375, 0.5));
+		// mirrored around 1/2 for negative inputs
+		return 0.5 + Math.copySign(y, input);
+	}
+}
@@ -0,0 +1,41 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.transferFunction;
+
+public class RationalSigmoid extends ApproximateSigmoid {
+	// sigmoid(x) = (1 + tanh(x / 2)) / 2, with tanh from the (7,6) continued
+	// fraction approximation. Accurate near zero and clamped where the
+	// approximation reaches one, no table and a single division per value
+
+	private static final double CLAMP = 4.97;
+
+	@Override
+	public double compute(double input) {
+		double x = input * 0.5;
+
+		if (x >= CLAMP) {
+			return 1.0;
+		}
+		if (x <= -CLAMP) {
+			return 0.0;
+		}
+
+		double x2 = x * x;
+		double tanh = x * (135135.0 + x2 * (17325.0 + x2 * (378.0 + x2)))
+				/ (135135.0 + x2 * (62370.0 + x2 * (3150.0 + x2 * 28.0)));
+		return 0.5 + 0.5 * tanh;
+	}
+}
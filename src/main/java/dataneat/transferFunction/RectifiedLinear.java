@@ -24,4 +24,14 @@ public class RectifiedLinear implements TransferFunction {
 	public INDArray compute(INDArray input) {		
 		return Transforms.relu(input);
 	}
+
+	@Override
+	public double compute(double input) {
+		return input > 0.0 ? input : 0.0;
+	}
+
+	@Override
+	public INDArray computeInPlace(INDArray input) {
+		return Transforms.relu(input, false);
+	}
 }
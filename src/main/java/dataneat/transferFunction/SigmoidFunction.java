@@ -24,4 +24,19 @@ public class SigmoidFunction implements TransferFunction {
 	public INDArray compute(INDArray input) {			
 		return Transforms.sigmoid(input);
 	}
+
+	@Override
+	public double compute(double input) {
+		return 1.0 / (1.0 + Math.exp(-input));
+	}
+
+	@Override
+	public INDArray computeInPlace(INDArray input) {
+		return Transforms.sigmoid(input, false);
+	}
+
+	public double getMaxError() {
+		// largest absolute difference from the exact sigmoid
+		return 0.0;
+	}
 }
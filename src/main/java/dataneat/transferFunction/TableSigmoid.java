@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.transferFunction;
+
+public class TableSigmoid extends ApproximateSigmoid {
+	// linear interpolation between sigmoid values tabulated on [-range, range],
+	// clamped outside of it. Half the error budget goes to the clamp and half
+	// to the interpolation, whose error is at most step^2 / 8 times the
+	// largest second derivative of the sigmoid, 1 / (6 * sqrt(3))
+
+	private static final double MAX_SECOND_DERIVATIVE = 1.0 / (6.0 * Math.sqrt(3.0));
+	private final double range, invStep;
+	// value and slope of the segment starting at every table point
+	private final double[] values, slopes;
+
+	public TableSigmoid() {
+		this(0.0001);
+	}
+
+	public TableSigmoid(double maxError) {
+		double half = maxError / 2.0;
+		double step = Math.sqrt(8.0 * half / MAX_SECOND_DERIVATIVE);
+		int segments = (int) Math.ceil(2.0 * Math.log((1.0 - half) / half) / step);
+
+		range = segments * step / 2.0;
+		invStep = 1.0 / step;
+		values = new double[segments + 1];
+		slopes = new double[segments + 1];
+
+		for (int i = 0; i <= segments; i++) {
+			values[i] = 1.0 / (1.0 + Math.exp(-(i * step - range)));
+		}
+		for (int i = 0; i < segments; i++) {
+			slopes[i] = values[i + 1] - values[i];
+		}
+	}
+
+	@Override
+	public double compute(double input) {
+		if (input <= -range) {
+			return values[0];
+		}
+		if (input >= range) {
+			return values[values.length - 1];
+		}
+
+		double position = (input + range) * invStep;
+		int i = (int) position;
+		return values[i] + (position - i) * slopes[i];
+	}
+
+	public int size() {
+		return values.length;
+	}
+}
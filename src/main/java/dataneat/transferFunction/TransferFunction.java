@@ -20,4 +20,25 @@ import org.nd4j.linalg.api.ndarray.INDArray;
 public interface TransferFunction {
 
 	public INDArray compute(INDArray input);
+
+	// the same function on a single value, for the evaluators that skip ND4J
+	public double compute(double input);
+
+	// for callers that own input, may overwrite it instead of allocating
+	public default INDArray computeInPlace(INDArray input) {
+		return compute(input);
+	}
+
+	// applies the function to values[from] up to values[to]
+	public default void apply(double[] values, int from, int to) {
+		for (int i = from; i < to; i++) {
+			values[i] = compute(values[i]);
+		}
+	}
+
+	public default void apply(float[] values, int from, int to) {
+		for (int i = from; i < to; i++) {
+			values[i] = (float) compute(values[i]);
+		}
+	}
 }
@@ -0,0 +1,70 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.transferFunction;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import dataneat.utils.PropertiesHolder;
+
+public class TransferFunctions {
+	// hands out the sigmoid chosen for the run. The class named by
+	// sigmoidFunction must be a SigmoidFunction whose error is within
+	// activationMaxError, anything else is a configuration error and is
+	// rejected. Kernels are stateless once built, so one instance per
+	// choice is shared
+
+	private static final String SIGMOID_FUNCTION = "sigmoidFunction";
+	private static final String MAX_ERROR = "activationMaxError";
+	private static final ConcurrentMap<String, SigmoidFunction> sigmoids = new ConcurrentHashMap<>();
+
+	private TransferFunctions() {}
+
+	public static SigmoidFunction sigmoid(PropertiesHolder p) {
+		String name = p.getAppProps().getProperty(SIGMOID_FUNCTION);
+		double maxError = Double.parseDouble(p.getAppProps().getProperty(MAX_ERROR));
+		return sigmoids.computeIfAbsent(name + ":" + maxError, key -> build(name, maxError));
+	}
+
+	private static SigmoidFunction build(String name, double maxError) {
+		SigmoidFunction sigmoid;
+
+		try {
+			Class<?> type = Class.forName(name);
+
+			if (!SigmoidFunction.class.isAssignableFrom(type)) {
+				throw new IllegalArgumentException(name + " is not a SigmoidFunction");
+			}
+
+			if (type == TableSigmoid.class) {
+				sigmoid = new TableSigmoid(maxError);
+			} else {
+				sigmoid = (SigmoidFunction) type.getDeclaredConstructor().newInstance();
+			}
+		} catch (ClassNotFoundException e) {
+			throw new IllegalArgumentException("Unknown sigmoid function " + name, e);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalArgumentException("Cannot create sigmoid function " + name, e);
+		}
+
+		if (sigmoid.getMaxError() > maxError) {
+			throw new IllegalArgumentException(sigmoid.getClass().getSimpleName() + " error "
+					+ sigmoid.getMaxError() + " is over the activationMaxError of " + maxError);
+		}
+
+		return sigmoid;
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.utils;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.nd4j.linalg.api.buffer.DataBuffer;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+public class BufferPool {
+	// evaluation buffers kept per worker thread, so that once every thread has
+	// seen the batch sizes in use evaluating a population allocates next to
+	// nothing. Scratch buffers are only borrowed for the duration of a single
+	// evaluation, callers copy out whatever has to outlive it. Their contents
+	// are undefined when handed out.
+	// Constant columns (zeros, ones, the stabilization delta) never change, so
+	// they are shared by every thread and must not be modified in place. Only
+	// the most recently used batch sizes of each value are kept, so that
+	// varying sizes (samples, test and prediction sets) do not pile up
+
+	public static final int STATE = 0;
+	public static final int NEXT = 1;
+	public static final int SUMS = 2;
+	private static final int NUM_SLOTS = 3;
+	private static final int MAX_COLUMNS = 8;
+
+	private static final ThreadLocal<BufferPool> pools = ThreadLocal.withInitial(BufferPool::new);
+	private static final ConcurrentMap<Double, Map<Integer, INDArray>> columns = new ConcurrentHashMap<>();
+
+	private double[][] doubles = new double[NUM_SLOTS][0];
+	private float[][] floats = new float[NUM_SLOTS][0];
+	private int[] ints = new int[0];
+	// backing storage of the scratch matrices, handed out as views
+	private DataBuffer[] matrices = new DataBuffer[NUM_SLOTS];
+
+	private BufferPool() {}
+
+	public static BufferPool getBufferPool() {
+		return pools.get();
+	}
+
+	public static INDArray column(int batchSize, double value) {
+		// shape = (batchSize,1), shared and read only
+		return columns.computeIfAbsent(value, v -> lruMap()).computeIfAbsent(batchSize,
+				b -> Nd4j.zeros(b, 1).addi(value));
+	}
+
+	private static Map<Integer, INDArray> lruMap() {
+		// evicted columns stay valid for whoever still holds them
+		return Collections.synchronizedMap(new LinkedHashMap<Integer, INDArray>(16, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Integer, INDArray> eldest) {
+				return size() > MAX_COLUMNS;
+			}
+		});
+	}
+
+	public static INDArray zeros(int batchSize) {
+		return column(batchSize, 0.0);
+	}
+
+	public static INDArray ones(int batchSize) {
+		return column(batchSize, 1.0);
+	}
+
+	public double[] doubles(int slot, int length) {
+		// at least length long
+		if (doubles[slot].length < length) {
+			doubles[slot] = new double[length];
+		}
+		return doubles[slot];
+	}
+
+	public float[] floats(int slot, int length) {
+		if (floats[slot].length < length) {
+			floats[slot] = new float[length];
+		}
+		return floats[slot];
+	}
+
+	public int[] ints(int length) {
+		if (ints.length < length) {
+			ints = new int[length];
+		}
+		return ints;
+	}
+
+	public INDArray matrix(int slot, int rows, int columns) {
+		// c ordered view over the slot storage, only the view itself is new
+		int length = rows * columns;
+
+		if (matrices[slot] == null || matrices[slot].length() < length) {
+			matrices[slot] = Nd4j.createBuffer(length);
+		}
+		return Nd4j.create(matrices[slot], new int[] { rows, columns }, new int[] { columns, 1 }, 0);
+	}
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+import java.util.function.IntToDoubleFunction;
+
+public class EvaluationExecutor {
+	// runs the evaluations of a population on threads of its own instead of
+	// the JVM wide common pool, so the number of threads competing with
+	// ND4J's is explicit. Work is ordered by its estimated cost, the items
+	// that cost more than a fair share of a thread are handed out one at a
+	// time longest first, and the rest are packed into tasks of about that
+	// share, so one species that grew far larger than the others does not
+	// leave a straggler at the end. The calling thread works too, and calls
+	// made from a worker run inline
+
+	// tasks per thread the cheap items are packed into
+	private static final int TASKS_PER_THREAD = 4;
+	private static final ThreadLocal<Boolean> worker = ThreadLocal.withInitial(() -> false);
+
+	private volatile int parallelism = Runtime.getRuntime().availableProcessors();
+	private volatile ExecutorService pool;
+
+	private EvaluationExecutor() {
+		pool = newPool(parallelism);
+	}
+
+	private static class EvaluationExecutorHolder {
+		private static final EvaluationExecutor INSTANCE = new EvaluationExecutor();
+	}
+
+	public static EvaluationExecutor getEvaluationExecutor() {
+		return EvaluationExecutorHolder.INSTANCE;
+	}
+
+	private static ExecutorService newPool(int parallelism) {
+		// the caller is one of the threads
+		AtomicInteger count = new AtomicInteger();
+		return parallelism <= 1 ? null : Executors.newFixedThreadPool(parallelism - 1, r -> {
+			Thread t = new Thread(() -> {
+				worker.set(true);
+				r.run();
+			}, "evaluation-" + count.incrementAndGet());
+			t.setDaemon(true);
+			return t;
+		});
+	}
+
+	public void forEach(int count, IntToDoubleFunction cost, IntConsumer task) {
+		// runs task on 0 .. count - 1, cost estimates how long each one takes
+		ExecutorService pool = this.pool;
+		int parallelism = this.parallelism;
+
+		if (pool == null || count < 2 || worker.get()) {
+			for (int i = 0; i < count; i++) {
+				task.accept(i);
+			}
+			return;
+		}
+
+		List<int[]> tasks = pack(count, cost, parallelism);
+		AtomicInteger next = new AtomicInteger();
+		Runnable drain = () -> {
+			for (int t = next.getAndIncrement(); t < tasks.size(); t = next.getAndIncrement()) {
+				for (int i : tasks.get(t)) {
+					task.accept(i);
+				}
+			}
+		};
+
+		int helpers = Math.min(parallelism - 1, tasks.size() - 1);
+		List<Future<?>> futures = new ArrayList<Future<?>>(helpers);
+		for (int h = 0; h < helpers; h++) {
+			futures.add(pool.submit(drain));
+		}
+
+		RuntimeException failure = null;
+		try {
+			drain.run();
+		} catch (RuntimeException e) {
+			failure = e;
+		}
+
+		for (Future<?> f : futures) {
+			try {
+				f.get();
+			} catch (ExecutionException e) {
+				if (failure == null) {
+					failure = e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause()
+							: new RuntimeException(e.getCause());
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				if (failure == null) {
+					failure = new RuntimeException(e);
+				}
+			}
+		}
+
+		if (failure != null) {
+			throw failure;
+		}
+	}
+
+	private static List<int[]> pack(int count, IntToDoubleFunction cost, int parallelism) {
+		// most expensive first, items under the share packed together
+		double[] costs = new double[count];
+		Integer[] order = new Integer[count];
+		double total = 0.0;
+
+		for (int i = 0; i < count; i++) {
+			costs[i] = cost.applyAsDouble(i);
+			order[i] = i;
+			total += costs[i];
+		}
+
+		Arrays.sort(order, (a, b) -> Double.compare(costs[b], costs[a]));
+		double share = total / (parallelism * TASKS_PER_THREAD);
+		List<int[]> tasks = new ArrayList<int[]>();
+		int start = 0;
+
+		while (start < count) {
+			int end = start + 1;
+			double sum = costs[order[start]];
+
+			while (end < count && sum + costs[order[end]] <= share) {
+				sum += costs[order[end]];
+				end++;
+			}
+
+			int[] items = new int[end - start];
+			for (int i = start; i < end; i++) {
+				items[i - start] = order[i];
+			}
+			tasks.add(items);
+			start = end;
+		}
+
+		return tasks;
+	}
+
+	public synchronized void setParallelism(int parallelism) {
+		// threads evaluating at once, 0 for one per core
+		int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+
+		if (threads != this.parallelism) {
+			if (pool != null) {
+				pool.shutdown();
+			}
+			pool = newPool(threads);
+			this.parallelism = threads;
+		}
+	}
+
+	public int getParallelism() {
+		return parallelism;
+	}
+}
@@ -21,6 +21,15 @@ public class RandGen {
 	private static long seed = 0;
 
 	public static final Random rand = new Random(seed);
+	// root of the streams of the run, see RandomStream
+	private static RandomStream run = new RandomStream(seed);
+	private static long generations = 0;
+	// the fitness samples draw from a child of the run of their own, so
+	// sampling leaves the generation streams as they are
+	private static final long SAMPLES = -1;
+	private static long samples = 0;
+	// stream of the task running on this thread, if any
+	private static final ThreadLocal<Random> taskStream = new ThreadLocal<Random>();
 		
 	public static long getSeed() {		
 		return seed;
@@ -28,5 +37,54 @@ public class RandGen {
 	
 	public static void setSeed(long s) {
 		seed = s;
+		reseed();
+	}
+
+	public static synchronized void reseed() {
+		// starts the run over from the seed
+		rand.setSeed(seed);
+		run = new RandomStream(seed);
+		generations = 0;
+		samples = 0;
+	}
+
+	public static synchronized RandomStream nextGeneration() {
+		// the stream of the next generation, split from the run
+		return run.split(generations++);
+	}
+
+	public static synchronized RandomStream nextSample() {
+		// the stream of the next fitness sample
+		return run.split(SAMPLES).split(samples++);
+	}
+
+	public static Random current() {
+		// the stream of the task this thread is running. Genome code draws
+		// from it, and outside of a task there is no stream that belongs to
+		// the seed, so that is a bug rather than a reason to fall back to the
+		// global generator
+		Random stream = taskStream.get();
+
+		if (stream == null) {
+			throw new IllegalStateException("No random stream is bound to this thread, see RandGen.run");
+		}
+
+		return stream;
+	}
+
+	public static void run(Random stream, Runnable task) {
+		// runs task with current() returning stream
+		Random previous = taskStream.get();
+		taskStream.set(stream);
+
+		try {
+			task.run();
+		} finally {
+			if (previous == null) {
+				taskStream.remove();
+			} else {
+				taskStream.set(previous);
+			}
+		}
 	}
 }
@@ -0,0 +1,67 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.utils;
+
+import java.util.Random;
+
+public class RandomStream extends Random {
+	// a SplitMix64 generator for one thread at a time. java.util.Random
+	// advances its seed with a compare and set so it can be shared, a stream
+	// belongs to a single task instead and just adds to a plain long. Streams
+	// split into children by index without advancing, so a run, its
+	// generations, their species and chromosomes form a tree of streams that
+	// only depends on the seed
+
+	private static final long serialVersionUID = 1L;
+	private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+	// the seed the stream started from, children are derived from it
+	private long origin;
+	private long state;
+
+	public RandomStream(long seed) {
+		super(seed);
+	}
+
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public synchronized void setSeed(long seed) {
+		// also called by the Random constructor
+		super.setSeed(seed);
+		origin = mix(seed);
+		state = origin;
+	}
+
+	public RandomStream split(long index) {
+		// child index of this stream, the same whatever has been drawn
+		return new RandomStream(origin + (index + 1) * GOLDEN_GAMMA);
+	}
+
+	@Override
+	protected int next(int bits) {
+		return (int) (nextLong() >>> (64 - bits));
+	}
+
+	@Override
+	public long nextLong() {
+		state += GOLDEN_GAMMA;
+		return mix(state);
+	}
+}
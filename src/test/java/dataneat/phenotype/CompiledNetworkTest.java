@@ -0,0 +1,113 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
+
+public class CompiledNetworkTest {
+
+	private static final int NETWORKS = 200;
+
+	@Test
+	public void currentTimestepMatchesNetwork() {
+		checkCurrentTimestep("0");
+	}
+
+	@Test
+	public void layeredCurrentTimestepMatchesNetwork() {
+		checkCurrentTimestep("1");
+	}
+
+	private void checkCurrentTimestep(String layered) {
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("layeredEval", layered);
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			INDArray inputs = RandomNetworks.inputs(n);
+			CompiledNetwork net = new CompiledNetwork(new NetworkPlan(chrom), chrom, p);
+			net.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.currentTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+		}
+	}
+
+	@Test
+	public void layersOnlyReadEarlierLayers() {
+		// every link a pass reads between computed neurons goes to a deeper
+		// layer, so a layer is one multiply of state columns that are final
+		PropertiesHolder p = RandomNetworks.properties();
+		int wide = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NetworkPlan plan = new NetworkPlan(RandomNetworks.chromosome(p, n, n % 2 == 0));
+			int first = plan.getFirstComputed();
+			int[] depths = plan.getDepths();
+
+			for (int k = 0; k < plan.getNumComputed(); k++) {
+				assertTrue(depths[k] >= 1 && depths[k] <= plan.getNumLayers());
+
+				for (int j = plan.getLinkStart()[k]; j < plan.getForwardEnd()[k]; j++) {
+					int source = plan.getLinkSource()[j];
+					if (source >= first) {
+						assertTrue(depths[source - first] < depths[k]);
+					}
+				}
+			}
+
+			wide += plan.getNumLayers() < plan.getNumComputed() ? 1 : 0;
+		}
+
+		assertTrue(wide > 0);
+	}
+
+	@Test
+	public void layersMatchNeuronByNeuron() {
+		// a layer sums the same products as its neurons one by one, also
+		// once the weights are swapped for those of a copy
+		PropertiesHolder single = RandomNetworks.properties();
+		single.getAppProps().setProperty("layeredEval", "0");
+		PropertiesHolder layered = RandomNetworks.properties();
+		layered.getAppProps().setProperty("layeredEval", "1");
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(layered, n, n % 2 == 0);
+			NeatChromosome copy = new NeatChromosome(chrom);
+			RandGen.run(new RandomStream(n), () -> copy.mutateLinkWeight(1.0));
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = RandomNetworks.inputs(n);
+
+			CompiledNetwork byNeuron = new CompiledNetwork(plan, chrom, single);
+			byNeuron.computeNetCurrentTimestep(inputs);
+			CompiledNetwork byLayer = new CompiledNetwork(plan, chrom, layered);
+			byLayer.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, byNeuron.getOutput(), byLayer.getOutput(), 1e-6);
+
+			byLayer.setWeights(plan.extractWeights(copy));
+			byLayer.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("copy " + n, RandomNetworks.currentTimestep(copy, layered, inputs),
+					byLayer.getOutput(), RandomNetworks.TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import dataneat.genome.NeatChromosome;
+import dataneat.transferFunction.SigmoidFunction;
+import dataneat.transferFunction.TransferFunctions;
+import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
+
+public class GeneratedNetworkTest {
+
+	private static final int NETWORKS = 200;
+
+	@Test
+	public void currentTimestepMatchesNetwork() {
+		PropertiesHolder p = RandomNetworks.properties();
+		int generated = 0, disabled = 0, bias = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			INDArray inputs = RandomNetworks.inputs(n);
+			GeneratedNetwork net = new GeneratedNetwork(new NetworkPlan(chrom), chrom, p);
+			net.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.currentTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+
+			generated += net.isGenerated() ? 1 : 0;
+			disabled += RandomNetworks.hasDisabledLink(chrom) ? 1 : 0;
+			bias += RandomNetworks.hasBiasLink(chrom) ? 1 : 0;
+		}
+
+		assertTrue(generated > NETWORKS / 2);
+		assertTrue(disabled > 0);
+		assertTrue(bias > 0);
+	}
+
+	@Test
+	public void prevTimestepMatchesNetwork() {
+		// relaxed until the threshold is met by neither, so both stop at the
+		// same point whatever their precision
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("stabilizationDelta", "1e-12");
+		int cyclic = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = RandomNetworks.inputs(n);
+			GeneratedNetwork net = new GeneratedNetwork(plan, chrom, p);
+			net.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.prevTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+
+			cyclic += plan.isAcyclic() ? 0 : 1;
+		}
+
+		assertTrue(cyclic > 0);
+	}
+
+	@Test
+	public void copiesWithOtherWeightsReuseTheClass() {
+		// a class per topology, the weights are handed to each instance
+		PropertiesHolder p = RandomNetworks.properties();
+		SigmoidFunction sigmoid = TransferFunctions.sigmoid(p);
+		EvaluatorGenerator generator = EvaluatorGenerator.getEvaluatorGenerator();
+		int reused = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			NeatChromosome copy = new NeatChromosome(chrom);
+			RandGen.run(new RandomStream(n), () -> copy.mutateLinkWeight(1.0));
+			NetworkPlan plan = new NetworkPlan(chrom), copyPlan = new NetworkPlan(copy);
+
+			GeneratedEvaluator evaluator = generator.newEvaluator(plan, plan.extractWeights(chrom), sigmoid);
+			if (evaluator == null) {
+				continue;
+			}
+
+			int classes = generator.size();
+			GeneratedEvaluator other = generator.newEvaluator(copyPlan, copyPlan.extractWeights(copy), sigmoid);
+			assertSame(evaluator.getClass(), other.getClass());
+			assertNotSame(evaluator, other);
+			assertEquals(classes, generator.size());
+			reused++;
+
+			INDArray inputs = RandomNetworks.inputs(n);
+			GeneratedNetwork net = new GeneratedNetwork(copyPlan, copy, p);
+			net.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("copy " + n, RandomNetworks.currentTimestep(copy, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+		}
+
+		assertTrue(reused > NETWORKS / 2);
+	}
+}
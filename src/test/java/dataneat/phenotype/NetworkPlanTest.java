@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
+
+public class NetworkPlanTest {
+
+	private static final int NETWORKS = 200;
+
+	@Test
+	public void copiesWithOtherWeightsShareThePlan() {
+		// a plan only holds the topology, the weights of any chromosome with
+		// that topology run on it
+		PropertiesHolder p = RandomNetworks.properties();
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			NeatChromosome copy = new NeatChromosome(chrom);
+			RandGen.run(new RandomStream(n), () -> copy.mutateLinkWeight(1.0));
+
+			NetworkPlan plan = new NetworkPlan(chrom);
+			assertEquals(plan, new NetworkPlan(copy));
+			assertEquals(plan.hashCode(), new NetworkPlan(copy).hashCode());
+
+			double[] weights = plan.extractWeights(copy);
+			assertFalse(Arrays.equals(plan.extractWeights(chrom), weights));
+
+			INDArray inputs = RandomNetworks.inputs(n);
+			CompiledNetwork net = new CompiledNetwork(plan, weights, false, p);
+			net.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.currentTimestep(copy, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+		}
+	}
+
+	@Test
+	public void acyclicNetworksRelaxInOnePass() {
+		// the single pass in topological order is the point Network relaxes
+		// to, which it reaches once the threshold is never met
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("stabilizationDelta", "1e-12");
+		int acyclic = 0, backwards = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			NetworkPlan plan = new NetworkPlan(chrom);
+
+			if (!plan.isAcyclic()) {
+				continue;
+			}
+
+			acyclic++;
+			backwards += plan.isForwardOnly() ? 0 : 1;
+			assertTopological(plan);
+
+			INDArray inputs = RandomNetworks.inputs(n);
+			INDArray expected = RandomNetworks.prevTimestep(chrom, p, inputs);
+			PrimitiveNetwork primitive = new PrimitiveNetwork(plan, chrom, p);
+			primitive.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("primitive " + n, expected, primitive.getOutput(), RandomNetworks.TOLERANCE);
+			RecurrentNetwork recurrent = new RecurrentNetwork(plan, chrom, p);
+			recurrent.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("recurrent " + n, expected, recurrent.getOutput(), RandomNetworks.TOLERANCE);
+			assertEquals(1, recurrent.getPasses());
+			GeneratedNetwork generated = new GeneratedNetwork(plan, chrom, p);
+			generated.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("generated " + n, expected, generated.getOutput(), RandomNetworks.TOLERANCE);
+		}
+
+		assertTrue(acyclic > 0);
+		assertTrue(backwards > 0);
+	}
+
+	@Test
+	public void acyclicMatchesADepthFirstSearch() {
+		// recurrent links and loopbacks make cycles unless they are pruned
+		// with the neurons that cannot reach an output, a search for a back
+		// edge over the plan's links finds the same ones as the topological
+		// sort
+		PropertiesHolder p = RandomNetworks.properties();
+		int acyclic = 0, cyclic = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NetworkPlan plan = new NetworkPlan(RandomNetworks.chromosome(p, n, true));
+			int[] color = new int[plan.getNumComputed()];
+			boolean cycle = false;
+
+			for (int k = 0; k < color.length && !cycle; k++) {
+				cycle = color[k] == 0 && hasBackEdge(plan, k, color);
+			}
+
+			assertEquals("network " + n, !cycle, plan.isAcyclic());
+			acyclic += cycle ? 0 : 1;
+			cyclic += cycle ? 1 : 0;
+		}
+
+		assertTrue(acyclic > 0);
+		assertTrue(cyclic > 0);
+	}
+
+	private boolean hasBackEdge(NetworkPlan plan, int k, int[] color) {
+		// color 1 while k is on the search path, 2 once it is done
+		int first = plan.getFirstComputed();
+		color[k] = 1;
+
+		for (int j = plan.getLinkStart()[k]; j < plan.getLinkStart()[k + 1]; j++) {
+			int source = plan.getLinkSource()[j] - first;
+
+			if (source >= 0 && (color[source] == 1 || (color[source] == 0 && hasBackEdge(plan, source, color)))) {
+				return true;
+			}
+		}
+
+		color[k] = 2;
+		return false;
+	}
+
+	private void assertTopological(NetworkPlan plan) {
+		// every link between computed neurons comes from one earlier in the
+		// order
+		int first = plan.getFirstComputed();
+		int[] order = plan.getTopologicalOrder();
+		int[] position = new int[plan.getNumComputed()];
+
+		assertEquals(plan.getNumComputed(), order.length);
+		for (int i = 0; i < order.length; i++) {
+			position[order[i]] = i;
+		}
+
+		for (int k = 0; k < plan.getNumComputed(); k++) {
+			for (int j = plan.getLinkStart()[k]; j < plan.getLinkStart()[k + 1]; j++) {
+				int source = plan.getLinkSource()[j];
+				if (source >= first) {
+					assertTrue(position[source - first] < position[k]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void prunedNetworksComputeTheSameOutputs() {
+		PropertiesHolder p = RandomNetworks.properties();
+		int pruned = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			NetworkPlan plan = new NetworkPlan(chrom);
+
+			if (plan.size() == chrom.getNeurons().sizeWithBias()) {
+				continue;
+			}
+
+			pruned++;
+			assertEquals(chrom.getNeurons().sizeWithBias() * 3, plan.getMaxPasses());
+
+			INDArray inputs = RandomNetworks.inputs(n);
+			PrimitiveNetwork net = new PrimitiveNetwork(plan, chrom, p);
+			net.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.currentTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+		}
+
+		assertTrue(pruned > 0);
+	}
+
+	@Test
+	public void prunedNetworksRelaxToTheSameOutputs() {
+		// with a threshold nothing meets before it converges, both iterate
+		// to the same point however many neurons each checks
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("stabilizationDelta", "1e-12");
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = RandomNetworks.inputs(n);
+			PrimitiveNetwork net = new PrimitiveNetwork(plan, chrom, p);
+			net.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.prevTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+		}
+	}
+
+	@Test
+	public void prunedNetworksStopWithinTheThreshold() {
+		// Network also waits for the pruned neurons to settle, and decides in
+		// single precision, so when stabilizationDelta stops the iteration
+		// the outputs may be a few passes, each under the threshold, apart
+		PropertiesHolder p = RandomNetworks.properties();
+		double delta = Double.parseDouble(p.getAppProps().getProperty("stabilizationDelta"));
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = RandomNetworks.inputs(n);
+			PrimitiveNetwork net = new PrimitiveNetwork(plan, chrom, p);
+			net.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.prevTimestep(chrom, p, inputs),
+					net.getOutput(), 5 * delta);
+		}
+	}
+}
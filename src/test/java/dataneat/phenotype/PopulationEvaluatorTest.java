@@ -0,0 +1,275 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import dataneat.genome.LinkGene;
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
+
+public class PopulationEvaluatorTest {
+
+	// more than one evalBlockSize, with duplicates
+	private static final int POP_SIZE = 120;
+	// over generatedMaxBatch, where incremental evaluation is used
+	private static final int CACHED_BATCH_SIZE = 40;
+
+	@After
+	public void disableCache() {
+		ActivationCache.getActivationCache().setCapacity(0);
+		ActivationCache.getActivationCache().clear();
+		ActivationCache.getActivationCache().resetCounters();
+	}
+
+	@Test
+	public void derivedOffspringMatchNetwork() {
+		checkOffspring(RandomNetworks.properties(), RandomNetworks.TOLERANCE);
+	}
+
+	@Test
+	public void derivedFloatOffspringMatchNetwork() {
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("floatEval", "1");
+		checkOffspring(p, RandomNetworks.TOLERANCE);
+	}
+
+	private void checkOffspring(PropertiesHolder p, double tolerance) {
+		// offspring of parents evaluated the generation before are derived
+		// from the parents' activations, on inputs prepared again
+		ActivationCache cache = ActivationCache.getActivationCache();
+		cache.clear();
+		cache.resetCounters();
+		cache.setCapacity(10000000);
+
+		List<NeatChromosome> parents = new ArrayList<NeatChromosome>();
+		for (int n = 0; n < POP_SIZE / 2; n++) {
+			parents.add(RandomNetworks.chromosome(p, n, n % 2 == 0));
+		}
+
+		INDArray inputs = RandomNetworks.inputs(POP_SIZE, CACHED_BATCH_SIZE);
+		PopulationEvaluator evaluator = new PopulationEvaluator(p);
+		evaluator.computeOutputColumns(parents, PreparedInput.of(inputs), new Phenotypes(parents));
+
+		List<NeatChromosome> offspring = new ArrayList<NeatChromosome>();
+		for (int n = 0; n < parents.size(); n++) {
+			NeatChromosome child = NeatChromosome.offspring(parents.get(n));
+			int mutation = n % 3;
+			RandGen.run(new RandomStream(n), () -> {
+				if (mutation == 0) {
+					child.mutateLinkWeight(1.0);
+				} else if (mutation == 1) {
+					child.mutateAddNode();
+				}
+			});
+			child.number();
+			offspring.add(child);
+		}
+
+		List<double[]> outputs = evaluator.computeOutputColumns(offspring, PreparedInput.of(inputs),
+				new Phenotypes(offspring));
+		assertTrue(cache.getDerived() > 0);
+
+		for (int n = 0; n < offspring.size(); n++) {
+			RandomNetworks.assertOutputs("offspring " + n,
+					RandomNetworks.currentTimestep(offspring.get(n), p, inputs), outputs.get(n), tolerance);
+		}
+	}
+
+	@Test
+	public void onlyTheChangedConeIsRecomputed() {
+		// a new weight on one link changes its neuron and every neuron that
+		// reads from it, directly or not, and nothing else
+		PropertiesHolder p = RandomNetworks.properties();
+		int partial = 0;
+
+		for (int n = 0; n < POP_SIZE; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			int first = plan.getFirstComputed();
+			int[] linkStart = plan.getLinkStart(), forwardEnd = plan.getForwardEnd();
+			double[] weights = plan.extractWeights(chrom);
+			int link = new Random(n).nextInt(forwardEnd[plan.getNumComputed() - 1] + 1);
+			int changedNeuron = -1;
+
+			for (int k = 0; k < plan.getNumComputed(); k++) {
+				if (link >= linkStart[k] && link < forwardEnd[k]) {
+					changedNeuron = k;
+				}
+			}
+
+			if (changedNeuron < 0) {
+				continue;
+			}
+
+			boolean[] cone = new boolean[plan.getNumComputed()];
+			cone[changedNeuron] = true;
+			for (int k = changedNeuron + 1; k < cone.length; k++) {
+				for (int j = linkStart[k]; j < forwardEnd[k]; j++) {
+					int source = plan.getLinkSource()[j] - first;
+					cone[k] |= source >= 0 && cone[source];
+				}
+			}
+
+			double[] childWeights = weights.clone();
+			childWeights[link] += 0.5;
+			Activations parent = new Activations(plan, weights, PreparedInput.of(RandomNetworks.inputs(n)), null);
+			boolean[] changed = parent.changedNeurons(plan, childWeights);
+
+			if (changed != null) {
+				assertArrayEquals(cone, changed);
+				partial++;
+			}
+		}
+
+		assertTrue(partial > 0);
+	}
+
+	@Test
+	public void derivedOffspringMatchFullEvaluation() {
+		// the neurons taken from the parent are the ones a full evaluation
+		// would compute again, to the last bit
+		PropertiesHolder p = RandomNetworks.properties();
+		ActivationCache cache = ActivationCache.getActivationCache();
+		cache.clear();
+		cache.resetCounters();
+		cache.setCapacity(10000000);
+		INDArray inputs = RandomNetworks.inputs(POP_SIZE, CACHED_BATCH_SIZE);
+		PopulationEvaluator evaluator = new PopulationEvaluator(p);
+
+		for (int n = 0; n < POP_SIZE / 4; n++) {
+			NeatChromosome parent = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			NeatChromosome child = NeatChromosome.offspring(parent);
+			LinkGene link = child.getLinks().getByIndex(new Random(n).nextInt(child.getLinks().size()));
+			link.setWeight(link.getWeight() + 0.5);
+			child.number();
+
+			evaluator.computeOutputColumns(Collections.singletonList(parent), inputs);
+			long derived = cache.getDerived();
+			double[] output = evaluator.computeOutputColumns(Collections.singletonList(child), inputs).get(0);
+
+			if (cache.getDerived() == derived) {
+				continue;
+			}
+
+			PrimitiveNetwork full = new PrimitiveNetwork(new NetworkPlan(child), child, p);
+			full.computeNetCurrentTimestep(inputs);
+			assertArrayEquals("network " + n, full.getOutputColumns(), output, 0.0);
+		}
+
+		assertTrue(cache.getDerived() > 0);
+	}
+
+	@Test
+	public void blocksMatchNetwork() {
+		// every network goes through the blocked ND4J path
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("primitiveMaxNeurons", "0");
+		p.getAppProps().setProperty("generatedMaxBatch", "0");
+		check(p);
+	}
+
+	@Test
+	public void primitiveNetworksMatchNetwork() {
+		// small networks go to the plain array evaluators
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("generatedMaxBatch", "0");
+		check(p);
+	}
+
+	@Test
+	public void generatedNetworksMatchNetwork() {
+		// and to the generated ones on batches this small
+		check(RandomNetworks.properties());
+	}
+
+	@Test
+	public void blockSizeDoesNotChangeOutputs() {
+		// a network gets the same columns of the stacked input multiply
+		// whichever block it lands in and wherever in it
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("primitiveMaxNeurons", "0");
+		p.getAppProps().setProperty("generatedMaxBatch", "0");
+		List<NeatChromosome> population = population(p);
+		INDArray inputs = RandomNetworks.inputs(POP_SIZE);
+
+		p.getAppProps().setProperty("evalBlockSize", "1");
+		List<double[]> expected = new PopulationEvaluator(p).computeOutputColumns(population, inputs);
+
+		for (String blockSize : new String[] { "7", "50", Integer.toString(POP_SIZE) }) {
+			p.getAppProps().setProperty("evalBlockSize", blockSize);
+			List<double[]> outputs = new PopulationEvaluator(p).computeOutputColumns(population, inputs);
+
+			for (int n = 0; n < POP_SIZE; n++) {
+				for (int i = 0; i < expected.get(n).length; i++) {
+					assertEquals("block " + blockSize + " network " + n, expected.get(n)[i], outputs.get(n)[i], 1e-6);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void duplicatesAreEvaluatedOnce() {
+		// copies with the same weights get the output of the first one
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("primitiveMaxNeurons", "0");
+		List<NeatChromosome> population = population(p);
+		List<double[]> outputs = new PopulationEvaluator(p).computeOutputColumns(population,
+				RandomNetworks.inputs(POP_SIZE));
+
+		for (int n = 9; n < POP_SIZE; n += 10) {
+			assertSame(outputs.get(n - 1), outputs.get(n));
+		}
+	}
+
+	private List<NeatChromosome> population(PropertiesHolder p) {
+		// every tenth chromosome a copy of the one before
+		List<NeatChromosome> population = new ArrayList<NeatChromosome>();
+
+		for (int n = 0; n < POP_SIZE; n++) {
+			population.add(n % 10 == 9 ? new NeatChromosome(population.get(n - 1))
+					: RandomNetworks.chromosome(p, n, n % 2 == 0));
+		}
+
+		return population;
+	}
+
+	private void check(PropertiesHolder p) {
+		List<NeatChromosome> population = population(p);
+		INDArray inputs = RandomNetworks.inputs(POP_SIZE);
+		List<INDArray> outputs = new PopulationEvaluator(p).computeNetCurrentTimestep(population, inputs);
+		assertEquals(POP_SIZE, outputs.size());
+
+		for (int n = 0; n < POP_SIZE; n++) {
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.currentTimestep(population.get(n), p, inputs),
+					outputs.get(n), RandomNetworks.TOLERANCE);
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import dataneat.genome.LinkDB;
+import dataneat.genome.LinkGene;
+import dataneat.genome.NeatChromosome;
+import dataneat.transferFunction.SigmoidFunction;
+import dataneat.transferFunction.TransferFunctions;
+import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
+
+public class PrimitiveNetworkTest {
+
+	private static final int NETWORKS = 200;
+
+	@Test
+	public void currentTimestepMatchesNetwork() {
+		PropertiesHolder p = RandomNetworks.properties();
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			INDArray inputs = RandomNetworks.inputs(n);
+			PrimitiveNetwork net = new PrimitiveNetwork(new NetworkPlan(chrom), chrom, p);
+			net.computeNetCurrentTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.currentTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+		}
+	}
+
+	@Test
+	public void prevTimestepMatchesNetwork() {
+		// relaxed until the threshold is met by neither, so both stop at the
+		// same point whatever their precision
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("stabilizationDelta", "1e-12");
+		int cyclic = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = RandomNetworks.inputs(n);
+			PrimitiveNetwork net = new PrimitiveNetwork(plan, chrom, p);
+			net.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.prevTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+
+			cyclic += plan.isAcyclic() ? 0 : 1;
+		}
+
+		assertTrue(cyclic > 0);
+	}
+
+	@Test
+	public void singleLayerComputesInDoublePrecision() {
+		// inputs wired straight to the outputs, where every output is the
+		// sigmoid of one dot product. The plain arrays sum in double, so they
+		// match it to rounding rather than to ND4J's single precision
+		PropertiesHolder p = RandomNetworks.properties();
+		SigmoidFunction sigmoid = TransferFunctions.sigmoid(p);
+		NeatChromosome[] chrom = new NeatChromosome[1];
+		RandGen.run(new RandomStream(0), () -> chrom[0] = new NeatChromosome(RandomNetworks.NUM_INPUTS,
+				RandomNetworks.NUM_OUTPUTS, true, p));
+		LinkDB links = chrom[0].getLinks();
+
+		for (int j = 0; j < links.size(); j++) {
+			links.getByIndex(j).setWeight(0.37 * (j + 1) - 1.5);
+		}
+
+		INDArray inputs = RandomNetworks.inputs(0);
+		PrimitiveNetwork net = new PrimitiveNetwork(new NetworkPlan(chrom[0]), chrom[0], p);
+		net.computeNetCurrentTimestep(inputs);
+		FloatPrimitiveNetwork floats = new FloatPrimitiveNetwork(new NetworkPlan(chrom[0]), chrom[0], p);
+		floats.computeNetCurrentTimestep(inputs);
+		List<Integer> outputIds = chrom[0].getNeurons().getOutputIds();
+		int batchSize = inputs.rows();
+
+		for (int s = 0; s < batchSize; s++) {
+			for (int o = 0; o < outputIds.size(); o++) {
+				double sum = 0.0;
+
+				for (int j = 0; j < links.size(); j++) {
+					LinkGene l = links.getByIndex(j);
+					if (l.getToNeuronID() == outputIds.get(o)) {
+						// input i has id -(i + 1)
+						sum += l.getWeight() * inputs.getDouble(s, -l.getFromNeuronID() - 1);
+					}
+				}
+
+				assertEquals(sigmoid.compute(sum), net.getOutputColumns()[o * batchSize + s], 1e-12);
+				assertEquals(sigmoid.compute(sum), floats.getOutputColumns()[o * batchSize + s], 1e-6);
+			}
+		}
+	}
+}
@@ -0,0 +1,170 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import dataneat.genome.ConnectivityType;
+import dataneat.genome.LinkDB;
+import dataneat.genome.LinkGene;
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.BufferPool;
+import dataneat.utils.PropertiesHolder;
+import dataneat.utils.RandGen;
+import dataneat.utils.RandomStream;
+
+class RandomNetworks {
+	// random chromosomes grown with the mutation operators, and Network's
+	// outputs on them, for the evaluators to be checked against. ND4J computes
+	// in single precision, so outputs are compared to a tolerance rather than
+	// exactly
+
+	static final double TOLERANCE = 1e-4;
+	static final int NUM_INPUTS = 4, NUM_OUTPUTS = 2, BATCH_SIZE = 13;
+
+	private RandomNetworks() {}
+
+	static PropertiesHolder properties() {
+		PropertiesHolder p = new PropertiesHolder("defaultProp.properties", null);
+		p.load();
+		return p;
+	}
+
+	static NeatChromosome chromosome(PropertiesHolder p, long seed, boolean recurrent) {
+		return chromosome(p, seed, recurrent, NUM_INPUTS);
+	}
+
+	static NeatChromosome chromosome(PropertiesHolder p, long seed, boolean recurrent, int numInputs) {
+		// a few dozen mutations of a fully connected chromosome. Some links
+		// end up disabled, some start at the bias, and recurrent ones may
+		// close cycles
+		RandomStream random = new RandomStream(seed);
+		List<NeatChromosome> result = new ArrayList<NeatChromosome>();
+
+		RandGen.run(random, () -> {
+			NeatChromosome chrom = new NeatChromosome(numInputs, NUM_OUTPUTS, true, p);
+			int mutations = 5 + random.nextInt(30);
+
+			for (int i = 0; i < mutations; i++) {
+				switch (random.nextInt(4)) {
+				case 0:
+					chrom.mutateAddNode();
+					break;
+				case 1:
+					chrom.mutateAddLink(20, recurrent ? ConnectivityType.RECURRENT : ConnectivityType.FORWARD);
+					break;
+				case 2:
+					LinkDB links = chrom.getLinks();
+					links.getByIndex(random.nextInt(links.size())).setEnabled(false);
+					break;
+				default:
+					chrom.mutateLinkWeight(1.0);
+					break;
+				}
+			}
+
+			result.add(chrom);
+		});
+
+		return result.get(0);
+	}
+
+	static boolean hasDisabledLink(NeatChromosome chrom) {
+		for (int i = 0; i < chrom.getLinks().size(); i++) {
+			if (!chrom.getLinks().getByIndex(i).isEnabled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static boolean hasBiasLink(NeatChromosome chrom) {
+		for (int i = 0; i < chrom.getLinks().size(); i++) {
+			LinkGene l = chrom.getLinks().getByIndex(i);
+			if (l.isBias() && l.isEnabled()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	static INDArray inputs(long seed) {
+		return inputs(seed, BATCH_SIZE);
+	}
+
+	static INDArray inputs(long seed, int batchSize) {
+		// shape = (batchSize,numInputs)
+		Random random = new Random(seed);
+		INDArray inputs = Nd4j.create(batchSize, NUM_INPUTS);
+
+		for (int s = 0; s < batchSize; s++) {
+			for (int i = 0; i < NUM_INPUTS; i++) {
+				inputs.putScalar(s, i, random.nextDouble() * 2.0 - 1.0);
+			}
+		}
+
+		return inputs;
+	}
+
+	static Network network(NeatChromosome chrom, PropertiesHolder p, int batchSize) {
+		double delta = Double.parseDouble(p.getAppProps().getProperty("stabilizationDelta"));
+		return new Network(chrom, p, BufferPool.column(batchSize, delta), batchSize);
+	}
+
+	static INDArray currentTimestep(NeatChromosome chrom, PropertiesHolder p, INDArray inputs) {
+		Network net = network(chrom, p, inputs.rows());
+		net.computeNetCurrentTimestep(inputs);
+		return net.getOutput();
+	}
+
+	static INDArray prevTimestep(NeatChromosome chrom, PropertiesHolder p, INDArray inputs) {
+		Network net = network(chrom, p, inputs.rows());
+		net.computeNetPrevTimestep(inputs);
+		return net.getOutput();
+	}
+
+	static void assertOutputs(String message, INDArray expected, INDArray actual, double tolerance) {
+		assertEquals(message, expected.rows(), actual.rows());
+		assertEquals(message, expected.columns(), actual.columns());
+
+		for (int s = 0; s < expected.rows(); s++) {
+			for (int o = 0; o < expected.columns(); o++) {
+				assertEquals(message + " sample " + s + " output " + o, expected.getDouble(s, o),
+						actual.getDouble(s, o), tolerance);
+			}
+		}
+	}
+
+	static void assertOutputs(String message, INDArray expected, double[] columns, double tolerance) {
+		// columns holds output o of sample s at o * batchSize + s
+		int rows = expected.rows();
+		assertEquals(message, expected.length(), columns.length);
+
+		for (int s = 0; s < rows; s++) {
+			for (int o = 0; o < expected.columns(); o++) {
+				assertEquals(message + " sample " + s + " output " + o, expected.getDouble(s, o),
+						columns[o * rows + s], tolerance);
+			}
+		}
+	}
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.PropertiesHolder;
+
+public class RecurrentNetworkTest {
+
+	private static final int NETWORKS = 200;
+
+	@Test
+	public void prevTimestepMatchesNetwork() {
+		// relaxed until the threshold is met by neither, so stopping per
+		// sample or for the whole batch ends at the same point
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("stabilizationDelta", "1e-12");
+		int cyclic = 0;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = RandomNetworks.inputs(n);
+			RecurrentNetwork net = new RecurrentNetwork(plan, chrom, p);
+			net.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.prevTimestep(chrom, p, inputs),
+					net.getOutput(), RandomNetworks.TOLERANCE);
+			assertTrue(net.getPasses() <= plan.getMaxPasses());
+
+			cyclic += plan.isAcyclic() ? 0 : 1;
+		}
+
+		assertTrue(cyclic > 0);
+	}
+
+	@Test
+	public void stopsWithinTheThreshold() {
+		// Network also waits for the neurons pruned from the plan to settle,
+		// so it may step a few more times, each step under the threshold
+		PropertiesHolder p = RandomNetworks.properties();
+		double delta = Double.parseDouble(p.getAppProps().getProperty("stabilizationDelta"));
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+			INDArray inputs = RandomNetworks.inputs(n);
+			RecurrentNetwork net = new RecurrentNetwork(new NetworkPlan(chrom), chrom, p);
+			net.computeNetPrevTimestep(inputs);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.prevTimestep(chrom, p, inputs),
+					net.getOutput(), 5 * delta);
+		}
+	}
+
+	@Test
+	public void everyEvaluatorStopsTheSameWay() {
+		// at the default threshold the stopping rule decides where relaxing
+		// ends, and it is the same one whichever evaluator the size picks
+		for (String perSample : new String[] { "0", "1" }) {
+			PropertiesHolder p = RandomNetworks.properties();
+			p.getAppProps().setProperty("perSampleConvergence", perSample);
+
+			for (int n = 0; n < NETWORKS; n++) {
+				NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+				NetworkPlan plan = new NetworkPlan(chrom);
+				INDArray inputs = RandomNetworks.inputs(n);
+				double[][] outputs = prevTimestep(plan, chrom, p, inputs);
+
+				for (int e = 1; e < outputs.length; e++) {
+					for (int i = 0; i < outputs[0].length; i++) {
+						assertEquals("perSample " + perSample + " network " + n + " evaluator " + e, outputs[0][i],
+								outputs[e][i], 1e-9);
+					}
+				}
+			}
+		}
+	}
+
+	@Test
+	public void perSampleConvergenceRelaxesEachSampleAlone() {
+		// stopping each sample once it is stable, a sample ends up the same
+		// whatever else is in the batch
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("perSampleConvergence", "1");
+		int batchSize = RandomNetworks.BATCH_SIZE;
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = RandomNetworks.inputs(n);
+			double[][] outputs = prevTimestep(plan, chrom, p, inputs);
+
+			for (int s = 0; s < batchSize; s++) {
+				double[][] alone = prevTimestep(plan, chrom, p, inputs.getRow(s).dup());
+
+				for (int e = 0; e < outputs.length; e++) {
+					for (int o = 0; o < alone[e].length; o++) {
+						assertEquals("network " + n + " sample " + s + " evaluator " + e, alone[e][o],
+								outputs[e][o * batchSize + s], 1e-9);
+					}
+				}
+			}
+		}
+	}
+
+	private static double[][] prevTimestep(NetworkPlan plan, NeatChromosome chrom, PropertiesHolder p,
+			INDArray inputs) {
+		// the column major outputs of the recurrent, plain array and
+		// generated evaluators
+		RecurrentNetwork recurrent = new RecurrentNetwork(plan, chrom, p);
+		recurrent.computeNetPrevTimestep(inputs);
+		PrimitiveNetwork primitive = new PrimitiveNetwork(plan, chrom, p);
+		primitive.computeNetPrevTimestep(inputs);
+		GeneratedNetwork generated = new GeneratedNetwork(plan, chrom, p);
+		generated.computeNetPrevTimestep(inputs);
+
+		return new double[][] { recurrent.getOutputColumns(), primitive.getOutputColumns(),
+				generated.getOutputColumns() };
+	}
+}
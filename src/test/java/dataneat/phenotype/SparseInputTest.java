@@ -0,0 +1,174 @@
+/*******************************************************************************
+ * Copyright [2016] [Ricardo Rivero]
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ *******************************************************************************/
+package dataneat.phenotype;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+import org.nd4j.linalg.api.ndarray.INDArray;
+import org.nd4j.linalg.factory.Nd4j;
+
+import dataneat.genome.NeatChromosome;
+import dataneat.utils.PropertiesHolder;
+
+public class SparseInputTest {
+
+	private static final int NETWORKS = 200;
+
+	private static INDArray sparseInputs(long seed) {
+		// shape = (batchSize,numInputs), about one feature in ten nonzero
+		Random random = new Random(seed);
+		INDArray inputs = Nd4j.zeros(RandomNetworks.BATCH_SIZE, RandomNetworks.NUM_INPUTS);
+
+		for (int s = 0; s < RandomNetworks.BATCH_SIZE; s++) {
+			for (int i = 0; i < RandomNetworks.NUM_INPUTS; i++) {
+				if (random.nextDouble() < 0.1) {
+					inputs.putScalar(s, i, random.nextDouble() * 2.0 - 1.0);
+				}
+			}
+		}
+
+		return inputs;
+	}
+
+	@Test
+	public void holdsTheNonzeroFeatures() {
+		INDArray inputs = sparseInputs(0);
+		PreparedInput input = PreparedInput.of(inputs);
+		SparseInput sparse = input.getSparse();
+		double[] columns = new double[input.getColumns().length];
+
+		for (int i = 0; i < RandomNetworks.NUM_INPUTS; i++) {
+			for (int j = sparse.getStart()[i]; j < sparse.getStart()[i + 1]; j++) {
+				assertTrue(sparse.getValues()[j] != 0.0);
+				columns[i * RandomNetworks.BATCH_SIZE + sparse.getSamples()[j]] = sparse.getValues()[j];
+			}
+		}
+
+		assertEquals(sparse.getNonzeros(), sparse.getStart()[RandomNetworks.NUM_INPUTS]);
+		for (int i = 0; i < columns.length; i++) {
+			assertEquals(input.getColumns()[i], columns[i], 0.0);
+		}
+	}
+
+	@Test
+	public void currentTimestepMatchesNetwork() {
+		PropertiesHolder p = RandomNetworks.properties();
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, n % 2 == 0);
+			INDArray inputs = sparseInputs(n);
+			PreparedInput input = PreparedInput.of(inputs);
+			assertTrue(input.getDensity() <= 0.25);
+			INDArray expected = RandomNetworks.currentTimestep(chrom, p, inputs);
+
+			PrimitiveNetwork primitive = new PrimitiveNetwork(new NetworkPlan(chrom), chrom, p);
+			primitive.computeNetCurrentTimestep(input);
+			RandomNetworks.assertOutputs("primitive " + n, expected, primitive.getOutput(), RandomNetworks.TOLERANCE);
+			FloatPrimitiveNetwork floats = new FloatPrimitiveNetwork(new NetworkPlan(chrom), chrom, p);
+			floats.computeNetCurrentTimestep(input);
+			RandomNetworks.assertOutputs("float " + n, expected, floats.getOutput(), RandomNetworks.TOLERANCE);
+		}
+	}
+
+	@Test
+	public void prevTimestepMatchesNetwork() {
+		// relaxed until the threshold is met by neither
+		PropertiesHolder p = RandomNetworks.properties();
+		p.getAppProps().setProperty("stabilizationDelta", "1e-12");
+
+		for (int n = 0; n < NETWORKS; n++) {
+			NeatChromosome chrom = RandomNetworks.chromosome(p, n, true);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			INDArray inputs = sparseInputs(n);
+			PreparedInput input = PreparedInput.of(inputs);
+			INDArray expected = RandomNetworks.prevTimestep(chrom, p, inputs);
+
+			PrimitiveNetwork primitive = new PrimitiveNetwork(plan, chrom, p);
+			primitive.computeNetPrevTimestep(input);
+			RandomNetworks.assertOutputs("primitive " + n, expected, primitive.getOutput(), RandomNetworks.TOLERANCE);
+			RecurrentNetwork recurrent = new RecurrentNetwork(plan, chrom, p);
+			recurrent.computeNetPrevTimestep(input);
+			RandomNetworks.assertOutputs("recurrent " + n, expected, recurrent.getOutput(), RandomNetworks.TOLERANCE);
+		}
+	}
+
+	@Test
+	public void wideInputsWithZeroColumnsMatchDense() {
+		// a wide, fully connected input layer where only a few features are
+		// ever set, the rest of the columns are all zero. The links from
+		// those visit no sample, and the outputs are those of the dense path
+		int numInputs = 40, batchSize = 30;
+		PropertiesHolder sparse = RandomNetworks.properties();
+		PropertiesHolder dense = RandomNetworks.properties();
+		dense.getAppProps().setProperty("sparseInputDensity", "0");
+
+		for (int n = 0; n < NETWORKS / 10; n++) {
+			Random random = new Random(n);
+			INDArray inputs = Nd4j.zeros(batchSize, numInputs);
+
+			for (int i = random.nextInt(4); i < numInputs; i += 8 + random.nextInt(8)) {
+				for (int s = 0; s < batchSize; s++) {
+					if (random.nextDouble() < 0.5) {
+						inputs.putScalar(s, i, random.nextDouble() * 2.0 - 1.0);
+					}
+				}
+			}
+
+			PreparedInput input = PreparedInput.of(inputs);
+			int[] start = input.getSparse().getStart();
+			int empty = 0;
+
+			for (int i = 0; i < numInputs; i++) {
+				empty += start[i] == start[i + 1] ? 1 : 0;
+			}
+
+			assertTrue(empty > numInputs / 2);
+			assertTrue(input.getDensity() <= 0.25);
+
+			NeatChromosome chrom = RandomNetworks.chromosome(sparse, n, n % 2 == 0, numInputs);
+			NetworkPlan plan = new NetworkPlan(chrom);
+			RandomNetworks.assertOutputs("network " + n, RandomNetworks.currentTimestep(chrom, sparse, inputs),
+					currentTimestep(plan, chrom, sparse, input), RandomNetworks.TOLERANCE);
+			assertSameColumns(currentTimestep(plan, chrom, dense, input), currentTimestep(plan, chrom, sparse, input));
+			assertSameColumns(prevTimestep(plan, chrom, dense, input), prevTimestep(plan, chrom, sparse, input));
+		}
+	}
+
+	private static void assertSameColumns(double[] expected, double[] actual) {
+		assertEquals(expected.length, actual.length);
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(expected[i], actual[i], 1e-12);
+		}
+	}
+
+	private static double[] currentTimestep(NetworkPlan plan, NeatChromosome chrom, PropertiesHolder p,
+			PreparedInput input) {
+		PrimitiveNetwork net = new PrimitiveNetwork(plan, chrom, p);
+		net.computeNetCurrentTimestep(input);
+		return net.getOutputColumns();
+	}
+
+	private static double[] prevTimestep(NetworkPlan plan, NeatChromosome chrom, PropertiesHolder p,
+			PreparedInput input) {
+		RecurrentNetwork net = new RecurrentNetwork(plan, chrom, p);
+		net.computeNetPrevTimestep(input);
+		return net.getOutputColumns();
+	}
+}